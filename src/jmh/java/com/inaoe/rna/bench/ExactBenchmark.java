@@ -0,0 +1,46 @@
+package com.inaoe.rna.bench;
+
+import com.inaoe.rna.utils.DistanceMatrix;
+import com.inaoe.rna.utils.TSPUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Held-Karp through {@link TSPUtils#solveExact}. Its tables grow as n 2^n, so the sizes stop at 16, the smallest
+ * size of the other benchmarks.
+ */
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ExactBenchmark {
+
+    @Param({"10", "13", "16"})
+    int n;
+
+    private DistanceMatrix graph;
+
+    @Setup(Level.Trial)
+    public void createInstance() {
+        graph = TSPUtils.getAdjacencyMatrix(TSPUtils.generateInstance(n, HopfieldBenchmark.SEED));
+    }
+
+    @Benchmark
+    public int[] solveExact() {
+        return TSPUtils.solveExact(graph);
+    }
+}
@@ -0,0 +1,99 @@
+package com.inaoe.rna.bench;
+
+import com.inaoe.rna.Hopfield;
+import com.inaoe.rna.utils.TSPUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hot paths of the double precision engine on a random instance that only depends on n.
+ */
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class HopfieldBenchmark {
+
+    static final long SEED = 42;
+
+    @Param({"16", "29", "51", "100", "200"})
+    int n;
+
+    private Hopfield hopfield;
+    private double[] state;
+
+    @Setup(Level.Trial)
+    public void createNetwork() {
+        hopfield = new Hopfield(n, TSPUtils.getAdjacencyMatrix(TSPUtils.generateInstance(n, SEED)));
+        hopfield.setSeed(SEED);
+        // V is all zeros right after init, so measure on the state a seeded run leaves behind
+        hopfield.start();
+        state = hopfield.getV().clone();
+    }
+
+    /**
+     * du of every neuron once, the work of one Euler sweep without the product and the output updates.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    public double du() {
+        double sum = 0;
+        for (int x = 0; x < n; x++) {
+            for (int i = 0; i < n; i++) {
+                sum += hopfield.du(x, i);
+            }
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    public double energyFunction() {
+        return hopfield.energyFunction(state);
+    }
+
+    /**
+     * One complete run from the seeded initial state until the network stops.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 2)
+    @Measurement(iterations = 5)
+    public Object[] start(RestartState restart) {
+        return restart.hopfield.start();
+    }
+
+    /**
+     * Network reseeded before every start, outside of the measured time.
+     */
+    @State(Scope.Thread)
+    public static class RestartState {
+
+        Hopfield hopfield;
+
+        @Setup(Level.Trial)
+        public void createNetwork(HopfieldBenchmark benchmark) {
+            int n = benchmark.n;
+            hopfield = new Hopfield(n, TSPUtils.getAdjacencyMatrix(TSPUtils.generateInstance(n, SEED)));
+        }
+
+        @Setup(Level.Invocation)
+        public void reseed() {
+            hopfield.setSeed(SEED);
+        }
+    }
+}
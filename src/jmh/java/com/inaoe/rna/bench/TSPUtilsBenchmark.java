@@ -0,0 +1,117 @@
+package com.inaoe.rna.bench;
+
+import com.inaoe.rna.utils.DistanceMatrix;
+import com.inaoe.rna.utils.TSPLibInstance;
+import com.inaoe.rna.utils.TSPLibReader;
+import com.inaoe.rna.utils.TSPUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Instance construction and the classic heuristics, on the same random instances as {@link HopfieldBenchmark}.
+ */
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TSPUtilsBenchmark {
+
+    @Param({"16", "29", "51", "100", "200"})
+    int n;
+
+    private List<double[]> nodes;
+    private DistanceMatrix graph;
+    private Path file;
+    private Path cacheDirectory;
+    private TSPLibReader reader;
+
+    @Setup(Level.Trial)
+    public void createInstance() throws IOException {
+        nodes = TSPUtils.generateInstance(n, HopfieldBenchmark.SEED);
+        graph = TSPUtils.getAdjacencyMatrix(nodes);
+        // the same instance as a headerless file, the format of data/
+        StringBuilder text = new StringBuilder().append(n).append('\n');
+        for (int i = 0; i < n; i++) {
+            text.append(String.format(Locale.ROOT, "%d %.6f %.6f%n", i + 1, nodes.get(i)[0], nodes.get(i)[1]));
+        }
+        file = Files.createTempFile("bench", ".tsp");
+        Files.writeString(file, text);
+
+        cacheDirectory = Files.createTempDirectory("bench-cache");
+        reader = new TSPLibReader();
+        reader.setCacheDirectory(cacheDirectory);
+        reader.read(file);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFiles() throws IOException {
+        Files.deleteIfExists(file);
+        try (Stream<Path> paths = Files.walk(cacheDirectory)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    @Benchmark
+    public DistanceMatrix getAdjacencyMatrix() {
+        return TSPUtils.getAdjacencyMatrix(nodes);
+    }
+
+    @Benchmark
+    public int[] nearestNeighbor() {
+        return TSPUtils.nearestNeighbor(graph, 0);
+    }
+
+    @Benchmark
+    public int[] nearestNeighborKdTree() {
+        return TSPUtils.nearestNeighbor(nodes, 0);
+    }
+
+    /**
+     * Parses the text file every time, without looking at the binary cache.
+     */
+    @Benchmark
+    public TSPLibInstance parse() throws IOException {
+        return reader.parse(file);
+    }
+
+    /**
+     * The public entry point the application uses: a reader without cache, so a full parse, plus the copy into the
+     * list of coordinate pairs.
+     */
+    @Benchmark
+    public List<double[]> readNodes() throws IOException {
+        return TSPUtils.readNodes(file.toString());
+    }
+
+    /**
+     * Loads the binary cache written during setup.
+     */
+    @Benchmark
+    public TSPLibInstance readCached() throws IOException {
+        return reader.read(file);
+    }
+}
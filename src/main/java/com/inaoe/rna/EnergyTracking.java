@@ -0,0 +1,22 @@
+package com.inaoe.rna;
+
+/**
+ * How a {@link HopfieldNetwork} records its energy while it runs.
+ */
+public enum EnergyTracking {
+
+    /**
+     * Nothing is recorded.
+     */
+    OFF,
+
+    /**
+     * The O(n^3) energy function is evaluated every energyInterval iterations.
+     */
+    SAMPLED,
+
+    /**
+     * Every iteration, derived in O(n^2) from the sums and the D * V product the update already computes.
+     */
+    INCREMENTAL
+}
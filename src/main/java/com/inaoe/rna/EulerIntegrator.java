@@ -0,0 +1,18 @@
+package com.inaoe.rna;
+
+/**
+ * Explicit Euler with the fixed step {@link HopfieldNetwork#getDelta()}. The outputs feeding the derivative are the
+ * ones of the previous iteration, which is how the network has always been updated.
+ */
+public class EulerIntegrator implements Integrator {
+
+    @Override
+    public void reset(HopfieldNetwork network) {
+    }
+
+    @Override
+    public int step(HopfieldNetwork network) {
+        network.eulerSweep();
+        return 1;
+    }
+}
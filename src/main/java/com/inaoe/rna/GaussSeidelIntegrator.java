@@ -0,0 +1,18 @@
+package com.inaoe.rna;
+
+/**
+ * Asynchronous in-place update: every neuron takes an Euler step with the outputs already updated earlier in the
+ * same sweep, which usually settles in fewer sweeps than the synchronous update. Runs on one thread.
+ */
+public class GaussSeidelIntegrator implements Integrator {
+
+    @Override
+    public void reset(HopfieldNetwork network) {
+    }
+
+    @Override
+    public int step(HopfieldNetwork network) {
+        network.gaussSeidelSweep(network.getDelta());
+        return 1;
+    }
+}
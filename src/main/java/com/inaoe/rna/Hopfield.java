@@ -1,207 +1,318 @@
 package com.inaoe.rna;
 
-import com.inaoe.rna.utils.TSPUtils;
+import com.inaoe.rna.utils.DistanceMatrix;
+import com.inaoe.rna.utils.HopfieldUtils;
 import lombok.Getter;
 
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.List;
-import java.util.Random;
 
 @Getter
-public class Hopfield {
-
-    private List<Double> energy;
-    private double[][] V;
-    private double[][] U;
-    private double graph[][];
-    private final double tao = 1;
-    private int n;
-    private double u0 = 0.02;
-    private double delta = 0.0001;
-    private final double u00 = 0.0;
-    private final double iterations = 2000;
-
-    private double nPrime = 15;
-    private double A = 500;
-    private double B = 500;
-    private double C = 200;
-    private double D = 500;
-
-    public Hopfield(int n, double[][] graph) {
-        this.n = n;
+public class Hopfield extends HopfieldNetwork {
+
+    // state is stored row-major in flat arrays, neuron (x, i) lives at x * n + i
+    private double[] V;
+    private double[] nextV;
+    private double[] U;
+    private DistanceMatrix graph;
+    private double[] rowSum;
+    private double[] colSum;
+    private double totalSum;
+    private double squareSum;
+    private double[] DV;
+
+    // set by gaussSeidelSweep(): the sums, and DV under dense coupling, already belong to nextV
+    private boolean sweptInPlace;
+
+    public Hopfield(int n, DistanceMatrix graph) {
+        super(n);
         this.graph = graph;
+        this.V = new double[n * n];
+        this.nextV = new double[n * n];
+        this.U = new double[n * n];
+        this.DV = new double[n * n];
+        this.rowSum = new double[n];
+        this.colSum = new double[n];
         init();
     }
 
-
+    @Override
     public void init() {
-        this.V = new double[n][n];
-        this.U = new double[n][n];
-        this.energy = new ArrayList<>();
+        Arrays.fill(V, 0);
+        Arrays.fill(nextV, 0);
+        Arrays.fill(DV, 0);
+        Arrays.fill(rowSum, 0);
+        Arrays.fill(colSum, 0);
+        this.totalSum = 0;
+        this.squareSum = 0;
+        this.energy.clear();
 
-        double min = -0.1 * u0;
-        double max = 0.1 * u0;
-        var rnd = new Random();
-        for (int i = 0; i < n; i++) {
-            for (int j = 0; j < n; j++) {
-                U[i][j] = u00 + (max - min) * rnd.nextDouble() + min;
+        for (int x = 0; x < n; x++) {
+            for (int i = 0; i < n; i++) {
+                U[x * n + i] = initialPotential(x, i);
             }
         }
     }
 
-    public void setConstants(double A, double B, double C, double D, double nPrime) {
-        this.A = A;
-        this.B = B;
-        this.C = C;
-        this.D = D;
-        this.nPrime = nPrime;
+    public void updateOutputs(double[] outputs) {
+        for (int i = 0; i < n * n; i++) {
+            outputs[i] = outputNeuron(U[i]);
+        }
     }
 
-    public void updateOutputs(double[][] outputs) {
-        for (int i = 0; i < n; i++) {
-            for (int j = 0; j < n; j++) {
-                outputs[i][j] = outputNeuron(U[i][j]);
+    @Override
+    public Object[] start() {
+        iterationsRun = 0;
+        derivativeEvaluations = 0;
+        quietIterations = 0;
+        stopReason = StopReason.MAX_ITERATIONS;
+        sweptInPlace = false;
+        integrator.reset(this);
+
+        beginRun();
+
+        for (int iter = 0; iter < iterations; iter++) {
+            if (cancelled) {
+                stopReason = StopReason.CANCELLED;
+                break;
+            }
+            long t = timed ? System.nanoTime() : 0;
+            derivativeEvaluations += integrator.step(this);
+            iterationsRun++;
+            if (timed) t = lap(Phase.UPDATE, t);
+            if (energyTracking == EnergyTracking.SAMPLED && iter % energyInterval == 0) {
+                energy.add(energyFunction(nextV));
+                if (timed) t = lap(Phase.ENERGY, t);
+            }
+
+            StopReason reason = checkConvergence();
+            if (timed) t = lap(Phase.CONVERGENCE, t);
+            // a stopping iteration is accepted like any other, so the last energy is that of the decoded state
+            double[] tmp = V;
+            V = nextV;
+            nextV = tmp;
+            if (!sweptInPlace) {
+                updateSums();
+                forEachRow(this::updateProduct);
+            } else if (neighbors != null) {
+                forEachRow(this::updateProduct);
             }
+            sweptInPlace = false;
+            if (timed) t = lap(Phase.PRODUCT, t);
+            if (energyTracking == EnergyTracking.INCREMENTAL) energy.add(incrementalEnergy());
+            if (timed) lap(Phase.ENERGY, t);
+            if (reason != null) {
+                stopReason = reason;
+                break;
+            }
+            offerSnapshot(iterationsRun);
         }
+        var tour = getTour(V);
+        boolean valid = isValid(tour);
+        endRun(valid);
+        return new Object[]{tour, valid};
     }
 
-    public Object[] force() {
-        Object[] tuple = null;
-        for (int i = 0; i < iterations; i++) {
-            tuple = start();
-            var valid = (boolean) tuple[1];
-            if (valid) {
-                return tuple;
+    /**
+     * Writes the outputs of rows [from, to) into nextV, records how much they moved, and moves their U one Euler
+     * step. Every row only reads V, the sums and DV from the previous iteration, so rows are independent of each
+     * other.
+     */
+    private void updateRows(int from, int to) {
+        for (int x = from; x < to; x++) {
+            double rowMax = 0;
+            int saturated = 0;
+            int zeros = 0;
+            for (int i = 0; i < n; i++) {
+                int xi = x * n + i;
+                double v = outputNeuron(U[xi]);
+                double change = Math.abs(v - V[xi]);
+                if (change > rowMax) rowMax = change;
+                if (v < SATURATION_MARGIN || v > 1 - SATURATION_MARGIN) saturated++;
+                if (v < ZERO) zeros++;
+                nextV[xi] = v;
+                U[xi] = U[xi] + du(x, i) * delta;
             }
-            init();
+            rowDelta[x] = rowMax;
+            rowSaturated[x] = saturated;
+            rowZeros[x] = zeros;
         }
-        return tuple;
     }
 
-    public Object[] start() {
-        int iter = 0;
-
-        for (; iter < iterations; iter++) {
-            double[][] tmpV = new double[n][n];
-            updateOutputs(tmpV);
-            energy.add(energyFunction(tmpV));
+    /**
+     * One explicit Euler step of every neuron, see {@link #updateRows(int, int)}.
+     */
+    @Override
+    void eulerSweep() {
+        forEachRow(this::updateRows);
+    }
 
-            for (int x = 0; x < n; x++) {
-                for (int i = 0; i < n; i++) {
-                    U[x][i] = U[x][i] +  du(x, i) * delta;
+    /**
+     * One asynchronous sweep: neurons are updated in place in row order and every update is visible to the next
+     * one. The sums are kept current after each neuron, and so is DV under dense coupling, so start() does not
+     * recompute them; with candidate lists DV is refreshed once per sweep.
+     */
+    @Override
+    void gaussSeidelSweep(double h) {
+        System.arraycopy(V, 0, nextV, 0, n * n);
+        for (int x = 0; x < n; x++) {
+            double rowMax = 0;
+            int saturated = 0;
+            int zeros = 0;
+            for (int i = 0; i < n; i++) {
+                int xi = x * n + i;
+                U[xi] = U[xi] + du(U[xi], nextV[xi], x, i, rowSum, colSum, totalSum, DV) * h;
+                double v = outputNeuron(U[xi]);
+                double dv = v - nextV[xi];
+                if (dv != 0) {
+                    squareSum += v * v - nextV[xi] * nextV[xi];
+                    nextV[xi] = v;
+                    rowSum[x] += dv;
+                    colSum[i] += dv;
+                    totalSum += dv;
+                    if (neighbors == null) {
+                        for (int y = 0; y < n; y++) {
+                            DV[y * n + i] += graph.get(y, x) * dv;
+                        }
+                    }
                 }
+                double change = Math.abs(v - V[xi]);
+                if (change > rowMax) rowMax = change;
+                if (v < SATURATION_MARGIN || v > 1 - SATURATION_MARGIN) saturated++;
+                if (v < ZERO) zeros++;
             }
-            if (TSPUtils.verifyStability(V, tmpV)) {
-                break;
-            }
-            V = tmpV;
+            rowDelta[x] = rowMax;
+            rowSaturated[x] = saturated;
+            rowZeros[x] = zeros;
         }
-        var tour = getTour(V);
-        return new Object[]{tour, isValid(tour)};
+        sweptInPlace = true;
     }
 
-    public static void printMatrix(double[][] V) {
-        System.out.println("\n");
-        for (int i = 0; i < V.length; i++) {
-            System.out.println(Arrays.toString(V[i]));
+    private void updateProduct(int from, int to) {
+        product(V, DV, from, to);
+    }
+
+    private void product(double[] V, double[] out, int from, int to) {
+        if (neighbors == null) {
+            HopfieldUtils.distanceProduct(graph, V, out, from, to);
+        } else {
+            HopfieldUtils.distanceProduct(neighbors, V, out, from, to);
         }
-        System.out.println("\n");
     }
 
+    @Override
+    protected double output(int x, int i) {
+        return V[x * n + i];
+    }
 
-    public double outputNeuron(double uxi) {
-        var tanh = Math.tanh(uxi / u0);
-        return 0.5 * (1 + tanh);
+    @Override
+    protected double distance(int x, int y) {
+        return graph.get(x, y);
     }
 
+    @Override
     public double[][] getState() {
         double[][] state = new double[n][n];
         for (int x = 0; x < n; x++) {
             for (int i = 0; i < n; i++) {
-                state[x][i] = outputNeuron(U[x][i]);
+                state[x][i] = outputNeuron(U[x * n + i]);
             }
         }
         return state;
     }
 
-    public double du(int x, int i) {
-        double term1 = U[x][i] / tao;
-        double term2 = 0;
-        double term3 = 0;
-        double term4 = 0;
-        double term5 = 0;
-
-        //computing second term
-        for (int j = 0; j < n; j++) {
-            if (j != i) {
-                term2 += V[x][j];
+    /**
+     * Recomputes the row, column and total sums of V. They only change when V does, so this is called once per
+     * iteration instead of once per neuron inside {@link #du(int, int)}.
+     */
+    private void updateSums() {
+        Arrays.fill(colSum, 0);
+        totalSum = 0;
+        squareSum = 0;
+        for (int x = 0; x < n; x++) {
+            double row = 0;
+            for (int i = 0; i < n; i++) {
+                double v = V[x * n + i];
+                row += v;
+                colSum[i] += v;
+                squareSum += v * v;
             }
+            rowSum[x] = row;
+            totalSum += row;
         }
-        term2 = A * term2;
+    }
 
-        //computing third term
-        for (int y = 0; y < n; y++) {
-            if (y != x) {
-                term3 += V[y][i];
-            }
-        }
-        term3 = B * term3;
+    /**
+     * Energy of V computed from its sums and from DV in O(n^2). Gives the same value as {@link #energyFunction}
+     * up to rounding.
+     */
+    @Override
+    protected double incrementalEnergy() {
+        double term1 = 0;
+        double term2 = 0;
+        double term3;
+        double term4 = 0;
 
-        //computing fourth term
-        for (int x_tmp = 0; x_tmp < n; x_tmp++) {
-            for (int j = 0; j < n; j++) {
-                term4 += V[x_tmp][j];
-            }
+        // sum over i != j of V[x][i] * V[x][j] is rowSum[x]^2 minus the squares
+        for (int x = 0; x < n; x++) {
+            term1 += rowSum[x] * rowSum[x];
         }
-        term4 = term4 - (nPrime);
-        term4 = C * term4;
-
-        //computing fifth term
-        for (int y = 0; y < n; y++) {
-            if (i > 0) {
-                term5 += graph[x][y] * (V[y][(i + 1) % n] + V[y][(i - 1) % n]);
-            } else {
-                term5 += graph[x][y] * (V[y][(i + 1) % n] + V[y][n - 1]);
-            }
+        term1 = A / 2 * (term1 - squareSum);
+
+        for (int i = 0; i < n; i++) {
+            term2 += colSum[i] * colSum[i];
         }
-        term5 = D * term5;
+        term2 = B / 2 * (term2 - squareSum);
 
-        return -term1 - term2 - term3 - term4 - term5;
-    }
+        term3 = C / 2 * Math.pow(totalSum - n, 2);
 
-    public int[] getTour(double[][] state) {
-        List<Integer> tour = new ArrayList<>();
-        for (int j = 0; j < n; j++) {
-            double max = 0;
-            int city = 0;
+        // V . (DV shifted by +1 and -1), without the i == x entries skipped by energyFunction
+        for (int x = 0; x < n; x++) {
             for (int i = 0; i < n; i++) {
-                if (state[i][j] != 0 && state[i][j] > max) {
-                    max = state[i][j];
-                    city = i;
+                if (i != x) {
+                    int prev = i > 0 ? i - 1 : n - 1;
+                    term4 += V[x * n + i] * (DV[x * n + (i + 1) % n] + DV[x * n + prev]);
                 }
             }
-            if (max != 0) tour.add(city);
         }
-        return tour.stream().mapToInt(i -> i).toArray();
+        term4 = D / 2 * term4;
+
+        return term1 + term2 + term3 + term4;
     }
 
-    public boolean isValid(int[] tour) {
-        if (tour.length != n) {
-            return false;
-        }
+    @Override
+    public double du(int x, int i) {
+        return du(x, i, rowSum, colSum, totalSum, DV);
+    }
 
-        int[] repetitions = new int[n];
-        for (int i = 0; i < n; i++) {
-            if (repetitions[tour[i]] > 0) {
-                return false;
-            }
-            repetitions[tour[i]]++;
-        }
-        return true;
+    public double du(int x, int i, double[] rowSum, double[] colSum, double totalSum, double[] DV) {
+        int xi = x * n + i;
+        return du(U[xi], V[xi], x, i, rowSum, colSum, totalSum, DV);
+    }
+
+    private double du(double uxi, double vxi, int x, int i, double[] rowSum, double[] colSum, double totalSum,
+                      double[] DV) {
+        double term1 = uxi / tao;
+        double term2;
+        double term3;
+        double term4;
+        double term5;
+
+        //computing second term
+        term2 = A * (rowSum[x] - vxi);
+
+        //computing third term
+        term3 = B * (colSum[i] - vxi);
+
+        //computing fourth term
+        term4 = C * (totalSum - nPrime);
+
+        //computing fifth term, DV = graph * V
+        term5 = D * (DV[x * n + (i + 1) % n] + DV[x * n + (i > 0 ? i - 1 : n - 1)]);
+
+        return -term1 - term2 - term3 - term4 - term5;
     }
 
-    public double energyFunction(double[][] V) {
+    public double energyFunction(double[] V) {
         double term1 = 0f;
         double term2 = 0f;
         double term3 = 0f;
@@ -212,7 +323,7 @@ public class Hopfield {
             for (int i = 0; i < n; i++) {
                 for (int j = 0; j < n; j++) {
                     if (i != j) {
-                        term1 += V[x][i] * V[x][j];
+                        term1 += V[x * n + i] * V[x * n + j];
                     }
                 }
             }
@@ -224,7 +335,7 @@ public class Hopfield {
             for (int x = 0; x < n; x++) {
                 for (int y = 0; y < n; y++) {
                     if (y != x) {
-                        term2 += V[x][i] * V[y][i];
+                        term2 += V[x * n + i] * V[y * n + i];
                     }
                 }
             }
@@ -234,30 +345,44 @@ public class Hopfield {
         // computing third term
         for (int x = 0; x < n; x++) {
             for (int i = 0; i < n; i++) {
-                term3 += V[x][i];
+                term3 += V[x * n + i];
             }
         }
         term3 = Math.pow(term3 - n, 2);
         term3 = C / 2 * term3;
 
         // computing fourth term
-        for (int x = 0; x < n; x++) {
-            for (int y = 0; y < n; y++) {
-                if (y != x) {
-                    for (int i = 0; i < n; i++) {
-                        if (i != x) {
-                            if (i > 0) {
-                                term4 += graph[x][y] * V[x][i] * (V[y][(i + 1) % n] + V[y][(i - 1) % n]);
-                            } else {
-                                term4 += graph[x][y] * V[x][i] * (V[y][(i + 1) % n] + V[y][n - 1]);
-                            }
-                        }
+        if (neighbors == null) {
+            for (int x = 0; x < n; x++) {
+                for (int y = 0; y < n; y++) {
+                    if (y != x) {
+                        term4 += tourTerm(V, x, y, graph.get(x, y));
                     }
                 }
             }
+        } else {
+            int[] offsets = neighbors.getOffsets();
+            int[] cities = neighbors.getNeighbors();
+            double[] weights = neighbors.getWeights();
+            for (int x = 0; x < n; x++) {
+                for (int e = offsets[x]; e < offsets[x + 1]; e++) {
+                    term4 += tourTerm(V, x, cities[e], weights[e]);
+                }
+            }
         }
         term4 = D / 2 * term4;
 
         return term1 + term2 + term3 + term4;
     }
-}
\ No newline at end of file
+
+    private double tourTerm(double[] V, int x, int y, double distance) {
+        double term = 0;
+        for (int i = 0; i < n; i++) {
+            if (i != x) {
+                int prev = i > 0 ? i - 1 : n - 1;
+                term += distance * V[x * n + i] * (V[y * n + (i + 1) % n] + V[y * n + prev]);
+            }
+        }
+        return term;
+    }
+}
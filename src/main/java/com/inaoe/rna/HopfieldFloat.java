@@ -0,0 +1,358 @@
+package com.inaoe.rna;
+
+import com.inaoe.rna.utils.DistanceMatrix;
+import com.inaoe.rna.utils.HopfieldUtils;
+import lombok.Getter;
+
+import java.util.Arrays;
+
+/**
+ * Single-precision variant of {@link Hopfield}. U, V and D * V are kept as float, which halves the memory traffic of
+ * a sweep; distances are read through the {@link DistanceMatrix} and sums and the derivative itself are still
+ * accumulated in double.
+ */
+@Getter
+public class HopfieldFloat extends HopfieldNetwork {
+
+    // state is stored row-major in flat arrays, neuron (x, i) lives at x * n + i
+    private float[] V;
+    private float[] nextV;
+    private float[] U;
+    private DistanceMatrix graph;
+    private double[] rowSum;
+    private double[] colSum;
+    private double totalSum;
+    private double squareSum;
+    private float[] DV;
+
+    // set by gaussSeidelSweep(): the sums, and DV under dense coupling, already belong to nextV
+    private boolean sweptInPlace;
+
+    public HopfieldFloat(int n, DistanceMatrix graph) {
+        super(n);
+        this.graph = graph;
+        this.V = new float[n * n];
+        this.nextV = new float[n * n];
+        this.U = new float[n * n];
+        this.DV = new float[n * n];
+        this.rowSum = new double[n];
+        this.colSum = new double[n];
+        init();
+    }
+
+    @Override
+    public void init() {
+        Arrays.fill(V, 0);
+        Arrays.fill(nextV, 0);
+        Arrays.fill(DV, 0);
+        Arrays.fill(rowSum, 0);
+        Arrays.fill(colSum, 0);
+        this.totalSum = 0;
+        this.squareSum = 0;
+        this.energy.clear();
+
+        for (int x = 0; x < n; x++) {
+            for (int i = 0; i < n; i++) {
+                U[x * n + i] = (float) initialPotential(x, i);
+            }
+        }
+    }
+
+    @Override
+    public Object[] start() {
+        iterationsRun = 0;
+        derivativeEvaluations = 0;
+        quietIterations = 0;
+        stopReason = StopReason.MAX_ITERATIONS;
+        sweptInPlace = false;
+        integrator.reset(this);
+
+        beginRun();
+
+        for (int iter = 0; iter < iterations; iter++) {
+            if (cancelled) {
+                stopReason = StopReason.CANCELLED;
+                break;
+            }
+            long t = timed ? System.nanoTime() : 0;
+            derivativeEvaluations += integrator.step(this);
+            iterationsRun++;
+            if (timed) t = lap(Phase.UPDATE, t);
+            if (energyTracking == EnergyTracking.SAMPLED && iter % energyInterval == 0) {
+                energy.add(energyFunction(nextV));
+                if (timed) t = lap(Phase.ENERGY, t);
+            }
+
+            StopReason reason = checkConvergence();
+            if (timed) t = lap(Phase.CONVERGENCE, t);
+            // a stopping iteration is accepted like any other, so the last energy is that of the decoded state
+            float[] tmp = V;
+            V = nextV;
+            nextV = tmp;
+            if (!sweptInPlace) {
+                updateSums();
+                forEachRow(this::updateProduct);
+            } else if (neighbors != null) {
+                forEachRow(this::updateProduct);
+            }
+            sweptInPlace = false;
+            if (timed) t = lap(Phase.PRODUCT, t);
+            if (energyTracking == EnergyTracking.INCREMENTAL) energy.add(incrementalEnergy());
+            if (timed) lap(Phase.ENERGY, t);
+            if (reason != null) {
+                stopReason = reason;
+                break;
+            }
+            offerSnapshot(iterationsRun);
+        }
+        var tour = getTour(V);
+        boolean valid = isValid(tour);
+        endRun(valid);
+        return new Object[]{tour, valid};
+    }
+
+    private void updateRows(int from, int to) {
+        for (int x = from; x < to; x++) {
+            double rowMax = 0;
+            int saturated = 0;
+            int zeros = 0;
+            for (int i = 0; i < n; i++) {
+                int xi = x * n + i;
+                float v = (float) outputNeuron(U[xi]);
+                double change = Math.abs(v - V[xi]);
+                if (change > rowMax) rowMax = change;
+                if (v < SATURATION_MARGIN || v > 1 - SATURATION_MARGIN) saturated++;
+                if (v < ZERO) zeros++;
+                nextV[xi] = v;
+                U[xi] = (float) (U[xi] + du(x, i) * delta);
+            }
+            rowDelta[x] = rowMax;
+            rowSaturated[x] = saturated;
+            rowZeros[x] = zeros;
+        }
+    }
+
+    @Override
+    void eulerSweep() {
+        forEachRow(this::updateRows);
+    }
+
+    /**
+     * Same sweep as {@link Hopfield#gaussSeidelSweep(double)}: the sums, and DV under dense coupling, follow every
+     * neuron update.
+     */
+    @Override
+    void gaussSeidelSweep(double h) {
+        System.arraycopy(V, 0, nextV, 0, n * n);
+        for (int x = 0; x < n; x++) {
+            double rowMax = 0;
+            int saturated = 0;
+            int zeros = 0;
+            for (int i = 0; i < n; i++) {
+                int xi = x * n + i;
+                U[xi] = (float) (U[xi] + du(U[xi], nextV[xi], x, i) * h);
+                float v = (float) outputNeuron(U[xi]);
+                double dv = v - nextV[xi];
+                if (dv != 0) {
+                    squareSum += (double) v * v - (double) nextV[xi] * nextV[xi];
+                    nextV[xi] = v;
+                    rowSum[x] += dv;
+                    colSum[i] += dv;
+                    totalSum += dv;
+                    if (neighbors == null) {
+                        for (int y = 0; y < n; y++) {
+                            DV[y * n + i] += (float) (graph.get(y, x) * dv);
+                        }
+                    }
+                }
+                double change = Math.abs(v - V[xi]);
+                if (change > rowMax) rowMax = change;
+                if (v < SATURATION_MARGIN || v > 1 - SATURATION_MARGIN) saturated++;
+                if (v < ZERO) zeros++;
+            }
+            rowDelta[x] = rowMax;
+            rowSaturated[x] = saturated;
+            rowZeros[x] = zeros;
+        }
+        sweptInPlace = true;
+    }
+
+    private void updateProduct(int from, int to) {
+        if (neighbors == null) {
+            HopfieldUtils.distanceProduct(graph, V, DV, from, to);
+        } else {
+            HopfieldUtils.distanceProduct(neighbors, V, DV, from, to);
+        }
+    }
+
+    @Override
+    protected double output(int x, int i) {
+        return V[x * n + i];
+    }
+
+    @Override
+    protected double distance(int x, int y) {
+        return graph.get(x, y);
+    }
+
+    @Override
+    public double[][] getState() {
+        double[][] state = new double[n][n];
+        for (int x = 0; x < n; x++) {
+            for (int i = 0; i < n; i++) {
+                state[x][i] = outputNeuron(U[x * n + i]);
+            }
+        }
+        return state;
+    }
+
+    private void updateSums() {
+        Arrays.fill(colSum, 0);
+        totalSum = 0;
+        squareSum = 0;
+        for (int x = 0; x < n; x++) {
+            double row = 0;
+            for (int i = 0; i < n; i++) {
+                double v = V[x * n + i];
+                row += v;
+                colSum[i] += v;
+                squareSum += v * v;
+            }
+            rowSum[x] = row;
+            totalSum += row;
+        }
+    }
+
+    /**
+     * Energy of V computed from its sums and from DV in O(n^2). Gives the same value as {@link #energyFunction}
+     * up to rounding.
+     */
+    @Override
+    protected double incrementalEnergy() {
+        double term1 = 0;
+        double term2 = 0;
+        double term3;
+        double term4 = 0;
+
+        // sum over i != j of V[x][i] * V[x][j] is rowSum[x]^2 minus the squares
+        for (int x = 0; x < n; x++) {
+            term1 += rowSum[x] * rowSum[x];
+        }
+        term1 = A / 2 * (term1 - squareSum);
+
+        for (int i = 0; i < n; i++) {
+            term2 += colSum[i] * colSum[i];
+        }
+        term2 = B / 2 * (term2 - squareSum);
+
+        term3 = C / 2 * Math.pow(totalSum - n, 2);
+
+        // V . (DV shifted by +1 and -1), without the i == x entries skipped by energyFunction
+        for (int x = 0; x < n; x++) {
+            for (int i = 0; i < n; i++) {
+                if (i != x) {
+                    int prev = i > 0 ? i - 1 : n - 1;
+                    term4 += V[x * n + i] * ((double) DV[x * n + (i + 1) % n] + DV[x * n + prev]);
+                }
+            }
+        }
+        term4 = D / 2 * term4;
+
+        return term1 + term2 + term3 + term4;
+    }
+
+    @Override
+    public double du(int x, int i) {
+        int xi = x * n + i;
+        return du(U[xi], V[xi], x, i);
+    }
+
+    private double du(double uxi, double vxi, int x, int i) {
+        double term1 = uxi / tao;
+        double term2 = A * (rowSum[x] - vxi);
+        double term3 = B * (colSum[i] - vxi);
+        double term4 = C * (totalSum - nPrime);
+        double term5 = D * ((double) DV[x * n + (i + 1) % n] + DV[x * n + (i > 0 ? i - 1 : n - 1)]);
+        return -term1 - term2 - term3 - term4 - term5;
+    }
+
+    public int[] getTour(float[] state) {
+        double[] wide = new double[n * n];
+        for (int i = 0; i < n * n; i++) {
+            wide[i] = state[i];
+        }
+        return getTour(wide);
+    }
+
+    public double energyFunction(float[] V) {
+        double term1 = 0;
+        double term2 = 0;
+        double term3 = 0;
+        double term4 = 0;
+
+        // computing first term
+        for (int x = 0; x < n; x++) {
+            for (int i = 0; i < n; i++) {
+                for (int j = 0; j < n; j++) {
+                    if (i != j) {
+                        term1 += V[x * n + i] * V[x * n + j];
+                    }
+                }
+            }
+        }
+        term1 = A / 2 * term1;
+
+        // computing second term
+        for (int i = 0; i < n; i++) {
+            for (int x = 0; x < n; x++) {
+                for (int y = 0; y < n; y++) {
+                    if (y != x) {
+                        term2 += V[x * n + i] * V[y * n + i];
+                    }
+                }
+            }
+        }
+        term2 = B / 2 * term2;
+
+        // computing third term
+        for (int i = 0; i < n * n; i++) {
+            term3 += V[i];
+        }
+        term3 = Math.pow(term3 - n, 2);
+        term3 = C / 2 * term3;
+
+        // computing fourth term
+        if (neighbors == null) {
+            for (int x = 0; x < n; x++) {
+                for (int y = 0; y < n; y++) {
+                    if (y != x) {
+                        term4 += tourTerm(V, x, y, graph.get(x, y));
+                    }
+                }
+            }
+        } else {
+            int[] offsets = neighbors.getOffsets();
+            int[] cities = neighbors.getNeighbors();
+            double[] weights = neighbors.getWeights();
+            for (int x = 0; x < n; x++) {
+                for (int e = offsets[x]; e < offsets[x + 1]; e++) {
+                    term4 += tourTerm(V, x, cities[e], weights[e]);
+                }
+            }
+        }
+        term4 = D / 2 * term4;
+
+        return term1 + term2 + term3 + term4;
+    }
+
+    private double tourTerm(float[] V, int x, int y, double distance) {
+        double term = 0;
+        for (int i = 0; i < n; i++) {
+            if (i != x) {
+                int prev = i > 0 ? i - 1 : n - 1;
+                term += distance * V[x * n + i] * (V[y * n + (i + 1) % n] + V[y * n + prev]);
+            }
+        }
+        return term;
+    }
+}
@@ -0,0 +1,671 @@
+package com.inaoe.rna;
+
+import com.inaoe.rna.utils.DistanceMatrix;
+import com.inaoe.rna.utils.DoubleList;
+import com.inaoe.rna.utils.NeighborList;
+import jdk.jfr.EventType;
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Parameters, restart loop and tour decoding shared by the Hopfield-Tank engines. Subclasses own the network state
+ * and implement the update in their own precision.
+ */
+@Getter
+public abstract class HopfieldNetwork {
+
+    protected DoubleList energy = new DoubleList();
+    protected EnergyTracking energyTracking = EnergyTracking.INCREMENTAL;
+    protected int energyInterval = 10;
+    protected final double tao = 1;
+    protected int n;
+    protected double u0 = 0.02;
+    protected double delta = 0.0001;
+    protected final double u00 = 0.0;
+    protected final double iterations = 2000;
+    protected int maxAttempts = 2000;
+    protected boolean repair = false;
+    protected int attempts;
+    protected boolean repaired;
+
+    protected double nPrime = 15;
+    protected double A = 500;
+    protected double B = 500;
+    protected double C = 200;
+    protected double D = 500;
+
+    protected Integrator integrator = new EulerIntegrator();
+
+    // parallel sweep, rows of the network are split across the pool when n >= parallelThreshold
+    protected ForkJoinPool pool;
+    // whether pool was created by setParallelism and has to be shut down when replaced
+    private boolean ownsPool;
+    protected int parallelThreshold = 64;
+
+    // when set, the distance term only couples each city to its candidate neighbours
+    protected NeighborList neighbors;
+
+    // convergence, see checkConvergence()
+    protected static final double SATURATION_MARGIN = 0.01;
+    protected static final double ZERO = 1e-15;
+    protected double tolerance = 1e-6;
+    protected int patience = 10;
+    protected double saturationFraction = 0;
+    protected double[] rowDelta;
+    protected int[] rowSaturated;
+    protected int[] rowZeros;
+    protected int quietIterations;
+    protected double maxDelta;
+    protected int iterationsRun;
+    // full n^2 evaluations of dU/dt made by the last run
+    protected int derivativeEvaluations;
+    protected StopReason stopReason;
+
+    // warm start, see setWarmStart()
+    protected int[] warmPositions;
+    protected double warmBias;
+    protected double warmNoise;
+
+    // looked up once, so a run without a recording allocates no event
+    private static final EventType RUN_EVENT = EventType.getEventType(HopfieldRunEvent.class);
+    private static final EventType SOLVE_EVENT = EventType.getEventType(HopfieldSolveEvent.class);
+
+    // instrumentation, see setInstrumented() and getMetrics()
+    protected boolean instrumented;
+    // whether the current run records phase times, because of instrumented or of a Flight Recorder recording
+    protected boolean timed;
+    protected final long[] phaseNanos = new long[Phase.values().length];
+    protected int runs;
+    protected long totalIterations;
+    protected long totalEvaluations;
+    protected double finalEnergy = Double.NaN;
+    private HopfieldRunEvent runEvent;
+    private long[] runStartNanos;
+
+    protected Activation activation = Activation.EXACT;
+    protected Random rnd = new Random();
+    protected volatile boolean cancelled;
+
+    // live view for other threads, see requestSnapshot()
+    private volatile boolean snapshotRequested;
+    private volatile HopfieldSnapshot snapshot;
+
+    protected HopfieldNetwork(int n) {
+        this.n = n;
+        this.rowDelta = new double[n];
+        this.rowSaturated = new int[n];
+        this.rowZeros = new int[n];
+    }
+
+    /**
+     * Creates the engine storing its state and distances in the given precision.
+     */
+    public static HopfieldNetwork create(int n, DistanceMatrix graph, StatePrecision precision) {
+        return precision == StatePrecision.FLOAT ? new HopfieldFloat(n, graph) : new Hopfield(n, graph);
+    }
+
+    /**
+     * Resets the network to a fresh random state, reusing the buffers allocated by the constructor.
+     */
+    public abstract void init();
+
+    /**
+     * Runs the dynamics from the current state and returns {tour, valid}.
+     */
+    public abstract Object[] start();
+
+    public abstract double[][] getState();
+
+    /**
+     * One explicit Euler step of every neuron from the outputs of the previous iteration, see {@link EulerIntegrator}.
+     */
+    abstract void eulerSweep();
+
+    /**
+     * One asynchronous in-place sweep with step h, see {@link GaussSeidelIntegrator}.
+     */
+    abstract void gaussSeidelSweep(double h);
+
+    /**
+     * dU/dt of neuron (x, i) for the current outputs.
+     */
+    public abstract double du(int x, int i);
+
+    /**
+     * Output of neuron (x, i) at the end of the last run.
+     */
+    protected abstract double output(int x, int i);
+
+    protected abstract double distance(int x, int y);
+
+    /**
+     * Energy of the current outputs from the cached sums and DV, in O(n^2).
+     */
+    protected abstract double incrementalEnergy();
+
+    /**
+     * Selects how dU/dt is integrated, {@link EulerIntegrator} by default.
+     */
+    public void setIntegrator(Integrator integrator) {
+        this.integrator = integrator;
+    }
+
+    /**
+     * Reseeds the random initial state and re-initializes the network, so a run can be reproduced from its seed.
+     * Clears a pending {@link #cancel()}.
+     */
+    public void setSeed(long seed) {
+        this.rnd = new Random(seed);
+        this.cancelled = false;
+        init();
+    }
+
+    /**
+     * Asks a running {@link #start()} or {@link #force()} to stop after the current iteration. The request holds
+     * until the next {@link #setSeed(long)} or {@link #force()}, so it also stops the attempts force() has left.
+     */
+    public void cancel() {
+        this.cancelled = true;
+    }
+
+    /**
+     * Asks the running network to publish a {@link HopfieldSnapshot} at the end of its current iteration. The solver
+     * only pays for decoding a tour when someone asked, so an observer controls the cost by how often it calls this.
+     */
+    public void requestSnapshot() {
+        this.snapshotRequested = true;
+    }
+
+    /**
+     * Latest snapshot published after {@link #requestSnapshot()}, or null if none was published yet.
+     */
+    public HopfieldSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Called by {@link #start()} at the end of every iteration, publishes a snapshot when one was requested.
+     */
+    protected void offerSnapshot(int iteration) {
+        if (!snapshotRequested) return;
+        snapshotRequested = false;
+        double[] outputs = new double[n * n];
+        for (int x = 0; x < n; x++) {
+            for (int i = 0; i < n; i++) {
+                outputs[x * n + i] = output(x, i);
+            }
+        }
+        double current = energyTracking == EnergyTracking.INCREMENTAL && !energy.isEmpty()
+                ? energy.get(energy.size() - 1) : incrementalEnergy();
+        snapshot = new HopfieldSnapshot(attempts + 1, iteration, current, getTour(outputs));
+    }
+
+    /**
+     * Restricts the distance term of the dynamics and of the energy to the given candidate lists, or restores the
+     * dense coupling when null. Candidates come from {@link NeighborList#build(DistanceMatrix, int)}.
+     */
+    public void setNeighbors(NeighborList neighbors) {
+        this.neighbors = neighbors;
+    }
+
+    public void setEnergyTracking(EnergyTracking energyTracking) {
+        this.energyTracking = energyTracking;
+    }
+
+    /**
+     * Iterations between two energy samples when tracking is {@link EnergyTracking#SAMPLED}.
+     */
+    public void setEnergyInterval(int energyInterval) {
+        if (energyInterval < 1) {
+            throw new IllegalArgumentException("Energy interval must be at least 1, not " + energyInterval);
+        }
+        this.energyInterval = energyInterval;
+    }
+
+    /**
+     * Stops a run once the largest |V change| of an iteration stays below tolerance for patience iterations in a row.
+     */
+    public void setConvergence(double tolerance, int patience) {
+        this.tolerance = tolerance;
+        this.patience = patience;
+    }
+
+    /**
+     * Also stops a run once this fraction of the neurons has an output within 0.01 of 0 or 1, 0 disables the check.
+     */
+    public void setSaturationFraction(double saturationFraction) {
+        this.saturationFraction = saturationFraction;
+    }
+
+    /**
+     * Makes {@link #init()} start near the given tour instead of from uniform noise. Neuron (tour[i], i) starts at
+     * u00 + bias * u0 and every other neuron at u00 - bias * u0, plus uniform noise in +-noise * u0. A bias of 2
+     * puts the tour's outputs near 0.98 and the rest near 0.02. The network is re-initialized right away.
+     */
+    public void setWarmStart(int[] tour, double bias, double noise) {
+        // isValid indexes by city, so ids have to be in range before it runs
+        for (int city : tour) {
+            if (city < 0 || city >= n) {
+                throw new IllegalArgumentException("Warm start tour has city " + city + ", cities are 0.." + (n - 1));
+            }
+        }
+        if (!isValid(tour)) {
+            throw new IllegalArgumentException("Warm start tour is not a permutation of " + n + " cities");
+        }
+        this.warmPositions = new int[n];
+        for (int i = 0; i < n; i++) {
+            warmPositions[tour[i]] = i;
+        }
+        this.warmBias = bias;
+        this.warmNoise = noise;
+        init();
+    }
+
+    /**
+     * Goes back to initializing from uniform noise.
+     */
+    public void clearWarmStart() {
+        this.warmPositions = null;
+        init();
+    }
+
+    /**
+     * Initial potential of neuron (x, i), drawn from rnd.
+     */
+    protected double initialPotential(int x, int i) {
+        if (warmPositions == null) {
+            double min = -0.1 * u0;
+            double max = 0.1 * u0;
+            return u00 + (max - min) * rnd.nextDouble() + min;
+        }
+        double bias = warmPositions[x] == i ? warmBias : -warmBias;
+        return u00 + bias * u0 + warmNoise * u0 * (2 * rnd.nextDouble() - 1);
+    }
+
+    public void setActivation(Activation activation) {
+        this.activation = activation;
+    }
+
+    public void setConstants(double A, double B, double C, double D, double nPrime) {
+        this.A = A;
+        this.B = B;
+        this.C = C;
+        this.D = D;
+        this.nPrime = nPrime;
+    }
+
+    /**
+     * Runs the neuron sweep on a pool of the given size, or sequentially when threads is 1. The common pool is used
+     * when it has the requested size, and a pool created by an earlier call is shut down.
+     */
+    public void setParallelism(int threads) {
+        if (threads <= 1) {
+            setPool(null);
+        } else if (threads == ForkJoinPool.getCommonPoolParallelism()) {
+            setPool(ForkJoinPool.commonPool());
+        } else {
+            setPool(new ForkJoinPool(threads));
+            ownsPool = true;
+        }
+    }
+
+    /**
+     * Runs the neuron sweep on a shared pool, or sequentially when pool is null.
+     */
+    public void setPool(ForkJoinPool pool) {
+        if (ownsPool) this.pool.shutdown();
+        this.pool = pool;
+        this.ownsPool = false;
+    }
+
+    public void setParallelThreshold(int parallelThreshold) {
+        this.parallelThreshold = parallelThreshold;
+    }
+
+    /**
+     * Number of runs {@link #force()} tries before giving up, 2000 by default.
+     */
+    public void setMaxAttempts(int maxAttempts) {
+        this.maxAttempts = maxAttempts;
+    }
+
+    /**
+     * When true, {@link #force()} turns the state of its last attempt into a valid tour with {@link #repairTour()}
+     * instead of returning an invalid one.
+     */
+    public void setRepair(boolean repair) {
+        this.repair = repair;
+    }
+
+    /**
+     * Restarts the network until a run ends in a valid tour, and returns {tour, valid, repaired}. Resets the metrics
+     * first, so {@link #getMetrics()} afterwards covers exactly this call.
+     */
+    public Object[] force() {
+        cancelled = false;
+        resetMetrics();
+        HopfieldSolveEvent event = SOLVE_EVENT.isEnabled() ? new HopfieldSolveEvent() : null;
+        if (event != null) event.begin();
+        attempts = 0;
+        repaired = false;
+        Object[] tuple = null;
+        Object[] result = null;
+        for (int i = 0; i < maxAttempts && result == null; i++) {
+            if (i > 0) {
+                long t = instrumented ? System.nanoTime() : 0;
+                init();
+                if (instrumented) lap(Phase.INIT, t);
+            }
+            tuple = start();
+            attempts++;
+            var valid = (boolean) tuple[1];
+            if (valid || cancelled) {
+                result = new Object[]{tuple[0], valid, false};
+            }
+        }
+        if (result == null && repair) {
+            long t = instrumented ? System.nanoTime() : 0;
+            repaired = true;
+            result = new Object[]{repairTour(), true, true};
+            if (instrumented) lap(Phase.REPAIR, t);
+        }
+        if (result == null) {
+            result = tuple == null ? new Object[]{new int[0], false, false} : new Object[]{tuple[0], tuple[1], false};
+        }
+        if (event != null && event.shouldCommit()) {
+            event.n = n;
+            event.attempts = attempts;
+            event.valid = (boolean) result[1];
+            event.repaired = repaired;
+            event.commit();
+        }
+        return result;
+    }
+
+    /**
+     * Turns the per-phase timers of {@link #getMetrics()} on or off. They are off by default, and a run then only
+     * pays for a few untaken branches per iteration.
+     */
+    public void setInstrumented(boolean instrumented) {
+        this.instrumented = instrumented;
+    }
+
+    /**
+     * Counters and phase timers accumulated by the runs since the last {@link #resetMetrics()}, with the stop reason
+     * and the final energy of the last run. The final energy is NaN unless the energy was tracked incrementally or the
+     * run was timed, since computing it costs an O(n^2) pass.
+     */
+    public SolverMetrics getMetrics() {
+        return new SolverMetrics(phaseNanos, runs, totalIterations, totalEvaluations, stopReason, finalEnergy);
+    }
+
+    public void resetMetrics() {
+        Arrays.fill(phaseNanos, 0);
+        runs = 0;
+        totalIterations = 0;
+        totalEvaluations = 0;
+        finalEnergy = Double.NaN;
+    }
+
+    /**
+     * Called by {@link #start()} before its first iteration.
+     */
+    protected void beginRun() {
+        runEvent = RUN_EVENT.isEnabled() ? new HopfieldRunEvent() : null;
+        timed = instrumented || runEvent != null;
+        runStartNanos = timed ? phaseNanos.clone() : null;
+        if (runEvent != null) runEvent.begin();
+    }
+
+    /**
+     * Adds the time since the given System.nanoTime() to phase and returns the current time, so consecutive phases
+     * can be chained.
+     */
+    protected long lap(Phase phase, long since) {
+        long now = System.nanoTime();
+        phaseNanos[phase.ordinal()] += now - since;
+        return now;
+    }
+
+    /**
+     * Called by {@link #start()} once the run has stopped, updates the counters and commits the run event.
+     */
+    protected void endRun(boolean valid) {
+        runs++;
+        totalIterations += iterationsRun;
+        totalEvaluations += derivativeEvaluations;
+        if (energyTracking == EnergyTracking.INCREMENTAL && !energy.isEmpty()) {
+            finalEnergy = energy.get(energy.size() - 1);
+        } else {
+            finalEnergy = timed ? incrementalEnergy() : Double.NaN;
+        }
+        if (runEvent != null && runEvent.shouldCommit()) {
+            runEvent.n = n;
+            runEvent.iterations = iterationsRun;
+            runEvent.stopReason = stopReason.name();
+            runEvent.energy = finalEnergy;
+            runEvent.valid = valid;
+            runEvent.updateNanos = runNanos(Phase.UPDATE);
+            runEvent.productNanos = runNanos(Phase.PRODUCT);
+            runEvent.energyNanos = runNanos(Phase.ENERGY);
+            runEvent.convergenceNanos = runNanos(Phase.CONVERGENCE);
+            runEvent.commit();
+        }
+        runEvent = null;
+        timed = false;
+    }
+
+    private long runNanos(Phase phase) {
+        return runStartNanos == null ? 0 : phaseNanos[phase.ordinal()] - runStartNanos[phase.ordinal()];
+    }
+
+    /**
+     * Decodes the current outputs into a valid tour even when they do not form a permutation matrix. Neurons above
+     * 0.5 are assigned greedily, strongest first, skipping cities and positions already taken. Cities left over are
+     * then added by cheapest insertion into the partial tour.
+     */
+    public int[] repairTour() {
+        // max-heap of the neurons above 0.5, equal outputs give the lower index first
+        int[] heap = new int[n * n];
+        double[] outputs = new double[n * n];
+        int count = 0;
+        for (int x = 0; x < n; x++) {
+            for (int i = 0; i < n; i++) {
+                double v = output(x, i);
+                outputs[x * n + i] = v;
+                if (v > 0.5) heap[count++] = x * n + i;
+            }
+        }
+        for (int k = count / 2 - 1; k >= 0; k--) {
+            siftDown(heap, count, k, outputs);
+        }
+
+        int[] cityAt = new int[n];
+        Arrays.fill(cityAt, -1);
+        boolean[] placed = new boolean[n];
+        int assigned = 0;
+        while (count > 0 && assigned < n) {
+            int xi = heap[0];
+            heap[0] = heap[--count];
+            siftDown(heap, count, 0, outputs);
+            int x = xi / n;
+            int i = xi % n;
+            if (!placed[x] && cityAt[i] < 0) {
+                cityAt[i] = x;
+                placed[x] = true;
+                assigned++;
+            }
+        }
+
+        int[] tour = new int[n];
+        int size = 0;
+        for (int i = 0; i < n; i++) {
+            if (cityAt[i] >= 0) tour[size++] = cityAt[i];
+        }
+        for (int x = 0; x < n; x++) {
+            if (placed[x]) continue;
+            if (size < 2) {
+                tour[size++] = x;
+                continue;
+            }
+            int bestPos = 0;
+            double bestCost = Double.POSITIVE_INFINITY;
+            for (int k = 0; k < size; k++) {
+                int a = tour[k];
+                int b = tour[k + 1 == size ? 0 : k + 1];
+                double cost = distance(a, x) + distance(x, b) - distance(a, b);
+                if (cost < bestCost) {
+                    bestCost = cost;
+                    bestPos = k + 1;
+                }
+            }
+            System.arraycopy(tour, bestPos, tour, bestPos + 1, size - bestPos);
+            tour[bestPos] = x;
+            size++;
+        }
+        return tour;
+    }
+
+    private static void siftDown(int[] heap, int size, int k, double[] outputs) {
+        int xi = heap[k];
+        while (true) {
+            int child = 2 * k + 1;
+            if (child >= size) break;
+            if (child + 1 < size && stronger(heap[child + 1], heap[child], outputs)) child++;
+            if (!stronger(heap[child], xi, outputs)) break;
+            heap[k] = heap[child];
+            k = child;
+        }
+        heap[k] = xi;
+    }
+
+    private static boolean stronger(int a, int b, double[] outputs) {
+        return outputs[a] > outputs[b] || (outputs[a] == outputs[b] && a < b);
+    }
+
+    /**
+     * Reduces the per-row maxima of |V change|, saturated and zero counts written by the sweep, and returns the
+     * reason to stop or null to keep iterating. A network whose outputs are all zero is never considered settled,
+     * the C term still drives it away from there.
+     */
+    protected StopReason checkConvergence() {
+        double max = 0;
+        int saturated = 0;
+        int zeros = 0;
+        for (int x = 0; x < n; x++) {
+            if (rowDelta[x] > max) max = rowDelta[x];
+            saturated += rowSaturated[x];
+            zeros += rowZeros[x];
+        }
+        maxDelta = max;
+        if (zeros == n * n) {
+            quietIterations = 0;
+            return null;
+        }
+        if (saturationFraction > 0 && saturated >= saturationFraction * n * n) {
+            return StopReason.SATURATED;
+        }
+        quietIterations = max < tolerance ? quietIterations + 1 : 0;
+        return quietIterations >= patience ? StopReason.CONVERGED : null;
+    }
+
+    public double outputNeuron(double uxi) {
+        return activation.output(uxi / u0);
+    }
+
+    public int[] getTour(double[] state) {
+        List<Integer> tour = new ArrayList<>();
+        for (int j = 0; j < n; j++) {
+            double max = 0;
+            int city = 0;
+            for (int i = 0; i < n; i++) {
+                if (state[i * n + j] != 0 && state[i * n + j] > max) {
+                    max = state[i * n + j];
+                    city = i;
+                }
+            }
+            if (max != 0) tour.add(city);
+        }
+        return tour.stream().mapToInt(i -> i).toArray();
+    }
+
+    public int[] getTour(double[][] state) {
+        double[] flat = new double[n * n];
+        for (int x = 0; x < n; x++) {
+            System.arraycopy(state[x], 0, flat, x * n, n);
+        }
+        return getTour(flat);
+    }
+
+    public boolean isValid(int[] tour) {
+        if (tour.length != n) {
+            return false;
+        }
+
+        int[] repetitions = new int[n];
+        for (int i = 0; i < n; i++) {
+            if (repetitions[tour[i]] > 0) {
+                return false;
+            }
+            repetitions[tour[i]]++;
+        }
+        return true;
+    }
+
+    public static void printMatrix(double[][] V) {
+        System.out.println("\n");
+        for (int i = 0; i < V.length; i++) {
+            System.out.println(Arrays.toString(V[i]));
+        }
+        System.out.println("\n");
+    }
+
+    /**
+     * Applies action to all rows, splitting them across the pool when there is one and the network is large enough
+     * to pay for the fork. Returns once every row is done, which is the barrier between two iterations.
+     */
+    protected void forEachRow(RowAction action) {
+        if (pool == null || n < parallelThreshold) {
+            action.apply(0, n);
+        } else {
+            int grain = Math.max(1, n / (pool.getParallelism() * 4));
+            pool.invoke(new RowTask(action, 0, n, grain));
+        }
+    }
+
+    protected interface RowAction {
+        void apply(int from, int to);
+    }
+
+    private static class RowTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final RowAction action;
+        private final int from;
+        private final int to;
+        private final int grain;
+
+        RowTask(RowAction action, int from, int to, int grain) {
+            this.action = action;
+            this.from = from;
+            this.to = to;
+            this.grain = grain;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= grain) {
+                action.apply(from, to);
+            } else {
+                int mid = (from + to) >>> 1;
+                invokeAll(new RowTask(action, from, mid, grain), new RowTask(action, mid, to, grain));
+            }
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package com.inaoe.rna;
+
+import com.inaoe.rna.utils.DistanceMatrix;
+import com.inaoe.rna.utils.TSPUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs independent restarts of a {@link HopfieldNetwork} on several threads instead of one after the other as
+ * {@link HopfieldNetwork#force()} does. Every worker owns its own network, and attempt k is seeded with seed + k, so any
+ * result can be reproduced with {@link HopfieldNetwork#setSeed(long)} followed by
+ * {@link HopfieldNetwork#start()}.
+ */
+public class HopfieldPortfolio {
+
+    private final int n;
+    private final DistanceMatrix graph;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private int maxAttempts = 2000;
+    private long timeBudgetMillis = 0;
+    private boolean keepBest = false;
+    private boolean repair = false;
+    private long seed = new Random().nextLong();
+    private StatePrecision precision = StatePrecision.DOUBLE;
+
+    private double nPrime = 15;
+    private double A = 500;
+    private double B = 500;
+    private double C = 200;
+    private double D = 500;
+
+    // shared between the workers of one solve() call
+    private final AtomicInteger nextAttempt = new AtomicInteger();
+    private final AtomicInteger completed = new AtomicInteger();
+    private final AtomicBoolean done = new AtomicBoolean();
+    private final List<HopfieldNetwork> networks = new ArrayList<>();
+    private long deadline;
+    private int[] bestTour;
+    private double bestLength;
+    private long bestSeed;
+    private int[] repairedTour;
+    private double repairedLength;
+    private long repairedSeed;
+
+    public HopfieldPortfolio(int n, DistanceMatrix graph) {
+        this.n = n;
+        this.graph = graph;
+    }
+
+    public void setConstants(double A, double B, double C, double D, double nPrime) {
+        this.A = A;
+        this.B = B;
+        this.C = C;
+        this.D = D;
+        this.nPrime = nPrime;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    public void setMaxAttempts(int maxAttempts) {
+        this.maxAttempts = maxAttempts;
+    }
+
+    /**
+     * Running attempts are cancelled and no new one is started once the given time has passed, 0 means no limit.
+     */
+    public void setTimeBudgetMillis(long timeBudgetMillis) {
+        this.timeBudgetMillis = timeBudgetMillis;
+    }
+
+    /**
+     * When true, keeps running until the attempts or the time budget are exhausted and returns the shortest valid
+     * tour. When false (the default), every attempt is cancelled as soon as one valid tour is found.
+     */
+    public void setKeepBest(boolean keepBest) {
+        this.keepBest = keepBest;
+    }
+
+    /**
+     * When true, every invalid attempt is also repaired with {@link HopfieldNetwork#repairTour()}, and the shortest
+     * repaired tour is returned if no attempt produced a valid one.
+     */
+    public void setRepair(boolean repair) {
+        this.repair = repair;
+    }
+
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    public void setPrecision(StatePrecision precision) {
+        this.precision = precision;
+    }
+
+    /**
+     * Returns {tour, valid, attempts, seed, repaired}, where attempts is the number of restarts that ran to the end, seed
+     * is the one that produced tour and repaired tells whether tour came from {@link HopfieldNetwork#repairTour()}.
+     */
+    public Object[] solve() throws InterruptedException {
+        nextAttempt.set(0);
+        completed.set(0);
+        done.set(false);
+        networks.clear();
+        deadline = timeBudgetMillis > 0 ? System.currentTimeMillis() + timeBudgetMillis : Long.MAX_VALUE;
+        bestTour = null;
+        bestLength = Double.POSITIVE_INFINITY;
+        repairedTour = null;
+        repairedLength = Double.POSITIVE_INFINITY;
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Object[]>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                HopfieldNetwork hopfield = HopfieldNetwork.create(n, graph, precision);
+                hopfield.setConstants(A, B, C, D, nPrime);
+                synchronized (networks) {
+                    networks.add(hopfield);
+                }
+                futures.add(executor.submit(() -> work(hopfield)));
+            }
+
+            // the last invalid tour is returned when no attempt produced a valid one
+            Object[] fallback = null;
+            for (Future<Object[]> future : futures) {
+                Object[] last = await(future);
+                if (last != null) fallback = last;
+            }
+            int attempts = completed.get();
+            synchronized (this) {
+                if (bestTour != null) {
+                    return new Object[]{bestTour, true, attempts, bestSeed, false};
+                }
+                if (repairedTour != null) {
+                    return new Object[]{repairedTour, true, attempts, repairedSeed, true};
+                }
+            }
+            return new Object[]{fallback == null ? new int[0] : fallback[0], false, attempts,
+                    fallback == null ? seed : fallback[2], false};
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            cancelAll();
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Waits for a worker, cancelling every running attempt once the time budget is over.
+     */
+    private Object[] await(Future<Object[]> future) throws InterruptedException, ExecutionException {
+        if (deadline != Long.MAX_VALUE) {
+            try {
+                return future.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                finish();
+            }
+        }
+        return future.get();
+    }
+
+    /**
+     * Runs attempts on one network until the portfolio is done, returning the last invalid {tour, valid, seed}.
+     */
+    private Object[] work(HopfieldNetwork hopfield) {
+        Object[] last = null;
+        while (!done.get()) {
+            if (System.currentTimeMillis() >= deadline) {
+                finish();
+                break;
+            }
+            int attempt = nextAttempt.getAndIncrement();
+            if (attempt >= maxAttempts) break;
+
+            long attemptSeed = seed + attempt;
+            hopfield.setSeed(attemptSeed);
+            // setSeed clears a pending cancel, so a finish() since the loop check has to be seen here
+            if (done.get()) break;
+            Object[] tuple = hopfield.start();
+            // a run stopped by finish() decodes a partial state its seed does not reproduce
+            if (hopfield.getStopReason() == StopReason.CANCELLED) break;
+            completed.incrementAndGet();
+            int[] tour = (int[]) tuple[0];
+            if ((boolean) tuple[1]) {
+                offer(tour, attemptSeed);
+                if (!keepBest) finish();
+            } else {
+                last = new Object[]{tour, false, attemptSeed};
+                if (repair && !done.get()) offerRepaired(hopfield.repairTour(), attemptSeed);
+            }
+        }
+        return last;
+    }
+
+    private synchronized void offer(int[] tour, long attemptSeed) {
+        double length = TSPUtils.fitnessFunction(graph, tour);
+        if (bestTour == null || length < bestLength) {
+            bestTour = tour;
+            bestLength = length;
+            bestSeed = attemptSeed;
+        }
+    }
+
+    private synchronized void offerRepaired(int[] tour, long attemptSeed) {
+        double length = TSPUtils.fitnessFunction(graph, tour);
+        if (repairedTour == null || length < repairedLength) {
+            repairedTour = tour;
+            repairedLength = length;
+            repairedSeed = attemptSeed;
+        }
+    }
+
+    private void finish() {
+        if (done.compareAndSet(false, true)) {
+            cancelAll();
+        }
+    }
+
+    private void cancelAll() {
+        synchronized (networks) {
+            for (HopfieldNetwork hopfield : networks) {
+                hopfield.cancel();
+            }
+        }
+    }
+}
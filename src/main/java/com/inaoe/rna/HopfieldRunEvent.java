@@ -0,0 +1,50 @@
+package com.inaoe.rna;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight Recorder event for one {@link HopfieldNetwork#start()}. While a recording has it enabled the run is timed
+ * per phase even when the network's own instrumentation is off.
+ */
+@Name("com.inaoe.rna.HopfieldRun")
+@Label("Hopfield Run")
+@Category("Hopfield TSP")
+@Description("One run of the Hopfield dynamics until it converged, saturated, hit the iteration cap or was cancelled")
+class HopfieldRunEvent extends Event {
+
+    @Label("Cities")
+    int n;
+
+    @Label("Iterations")
+    int iterations;
+
+    @Label("Stop Reason")
+    String stopReason;
+
+    @Label("Final Energy")
+    double energy;
+
+    @Label("Valid Tour")
+    boolean valid;
+
+    @Label("Update Time")
+    @Timespan
+    long updateNanos;
+
+    @Label("Product Time")
+    @Timespan
+    long productNanos;
+
+    @Label("Energy Time")
+    @Timespan
+    long energyNanos;
+
+    @Label("Convergence Time")
+    @Timespan
+    long convergenceNanos;
+}
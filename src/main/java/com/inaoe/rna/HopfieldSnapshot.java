@@ -0,0 +1,25 @@
+package com.inaoe.rna;
+
+import lombok.Getter;
+
+/**
+ * Progress of a running network, published for observers on other threads after
+ * {@link HopfieldNetwork#requestSnapshot()}.
+ */
+@Getter
+public class HopfieldSnapshot {
+
+    // 1-based attempt of force(), 1 for a single start()
+    private final int attempt;
+    private final int iteration;
+    private final double energy;
+    // decoded from the current outputs, may repeat or miss cities while the network has not settled
+    private final int[] tour;
+
+    HopfieldSnapshot(int attempt, int iteration, double energy, int[] tour) {
+        this.attempt = attempt;
+        this.iteration = iteration;
+        this.energy = energy;
+        this.tour = tour;
+    }
+}
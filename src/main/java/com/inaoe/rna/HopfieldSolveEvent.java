@@ -0,0 +1,29 @@
+package com.inaoe.rna;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event for one {@link HopfieldNetwork#force()}, spanning all of its restarts.
+ */
+@Name("com.inaoe.rna.HopfieldSolve")
+@Label("Hopfield Solve")
+@Category("Hopfield TSP")
+@Description("Restarts of the Hopfield network until a valid tour was found or the attempts ran out")
+class HopfieldSolveEvent extends Event {
+
+    @Label("Cities")
+    int n;
+
+    @Label("Attempts")
+    int attempts;
+
+    @Label("Valid Tour")
+    boolean valid;
+
+    @Label("Repaired")
+    boolean repaired;
+}
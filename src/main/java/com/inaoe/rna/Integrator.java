@@ -0,0 +1,18 @@
+package com.inaoe.rna;
+
+/**
+ * Integration scheme for dU/dt in {@link HopfieldNetwork#start()}, for both precisions.
+ */
+public interface Integrator {
+
+    /**
+     * Called at the beginning of every run, before the first step.
+     */
+    void reset(HopfieldNetwork network);
+
+    /**
+     * Advances U by one step and leaves the outputs of the new state in nextV, together with how much they moved.
+     * Returns the number of full dU/dt evaluations it used.
+     */
+    int step(HopfieldNetwork network);
+}
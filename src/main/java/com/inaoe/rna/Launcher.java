@@ -1,7 +1,16 @@
 package com.inaoe.rna;
 
+import com.inaoe.rna.cli.BatchRunner;
+
+import java.util.Arrays;
+
 public class Launcher {
     public static void main(String[] args) {
-        Main.main(args);
+        // "batch" runs the headless experiment runner, anything else opens the window
+        if (args.length > 0 && args[0].equals("batch")) {
+            BatchRunner.main(Arrays.copyOfRange(args, 1, args.length));
+        } else {
+            Main.main(args);
+        }
     }
 }
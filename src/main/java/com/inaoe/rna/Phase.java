@@ -0,0 +1,37 @@
+package com.inaoe.rna;
+
+/**
+ * Parts of a solve timed by the instrumentation of {@link HopfieldNetwork}.
+ */
+public enum Phase {
+
+    /**
+     * Drawing a fresh initial state before a restart of {@link HopfieldNetwork#force()}.
+     */
+    INIT,
+
+    /**
+     * The integrator step: outputs, dU/dt and the update of U.
+     */
+    UPDATE,
+
+    /**
+     * Row, column and total sums and the distance product DV after the new outputs are swapped in.
+     */
+    PRODUCT,
+
+    /**
+     * Energy tracking, sampled or incremental.
+     */
+    ENERGY,
+
+    /**
+     * The convergence and saturation test.
+     */
+    CONVERGENCE,
+
+    /**
+     * {@link HopfieldNetwork#repairTour()} on the state of the last attempt.
+     */
+    REPAIR
+}
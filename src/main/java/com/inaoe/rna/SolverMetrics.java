@@ -0,0 +1,53 @@
+package com.inaoe.rna;
+
+import lombok.Getter;
+
+import java.util.Locale;
+
+/**
+ * Snapshot of the instrumentation of a {@link HopfieldNetwork}, see {@link HopfieldNetwork#getMetrics()}. Phase
+ * timers are only filled while instrumentation is on, the final energy then or under incremental energy tracking;
+ * the counters and the stop reason always are.
+ */
+@Getter
+public class SolverMetrics {
+
+    private final long[] phaseNanos;
+    private final int runs;
+    private final long iterations;
+    private final long derivativeEvaluations;
+    private final StopReason stopReason;
+    private final double finalEnergy;
+
+    SolverMetrics(long[] phaseNanos, int runs, long iterations, long derivativeEvaluations, StopReason stopReason,
+                  double finalEnergy) {
+        this.phaseNanos = phaseNanos.clone();
+        this.runs = runs;
+        this.iterations = iterations;
+        this.derivativeEvaluations = derivativeEvaluations;
+        this.stopReason = stopReason;
+        this.finalEnergy = finalEnergy;
+    }
+
+    public long getPhaseNanos(Phase phase) {
+        return phaseNanos[phase.ordinal()];
+    }
+
+    public long getTotalNanos() {
+        long total = 0;
+        for (long nanos : phaseNanos) total += nanos;
+        return total;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder(String.format(Locale.ROOT,
+                "runs=%d iterations=%d evaluations=%d stop=%s energy=%.6g", runs, iterations,
+                derivativeEvaluations, stopReason, finalEnergy));
+        for (Phase phase : Phase.values()) {
+            text.append(String.format(Locale.ROOT, " %s=%.3fms", phase.name().toLowerCase(Locale.ROOT),
+                    getPhaseNanos(phase) / 1e6));
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,9 @@
+package com.inaoe.rna;
+
+/**
+ * Floating-point type used by a {@link HopfieldNetwork} for its state and distance matrix.
+ */
+public enum StatePrecision {
+    DOUBLE,
+    FLOAT
+}
@@ -0,0 +1,27 @@
+package com.inaoe.rna;
+
+/**
+ * Why the last {@link HopfieldNetwork#start()} returned.
+ */
+public enum StopReason {
+
+    /**
+     * The largest change of V stayed below the tolerance for patience iterations in a row.
+     */
+    CONVERGED,
+
+    /**
+     * The requested fraction of neurons reached an output within the saturation margin of 0 or 1.
+     */
+    SATURATED,
+
+    /**
+     * The iteration cap was reached first.
+     */
+    MAX_ITERATIONS,
+
+    /**
+     * {@link HopfieldNetwork#cancel()} was called.
+     */
+    CANCELLED
+}
@@ -0,0 +1,385 @@
+package com.inaoe.rna.cli;
+
+import com.inaoe.rna.GaussSeidelIntegrator;
+import com.inaoe.rna.HopfieldNetwork;
+import com.inaoe.rna.StatePrecision;
+import com.inaoe.rna.utils.BranchAndBoundSolver;
+import com.inaoe.rna.utils.DistanceMatrix;
+import com.inaoe.rna.utils.LocalSearch;
+import com.inaoe.rna.utils.TSPLibInstance;
+import com.inaoe.rna.utils.TSPLibReader;
+import com.inaoe.rna.utils.TSPUtils;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Headless entry point for experiments: runs every combination of instance, solver and seed on a thread pool and
+ * prints one CSV or JSON line per finished job, without touching JavaFX. Started through
+ * {@code Launcher batch [options] instance...}.
+ */
+public class BatchRunner {
+
+    private static final String USAGE = String.join(System.lineSeparator(),
+            "Usage: batch [options] instance...",
+            "  instance           a TSPLIB or headerless .tsp file, or random:N[:SEED] for N random cities",
+            "  --solvers LIST     comma separated: hopfield, nearest, local, exact, bnb, random (default hopfield,nearest)",
+            "  --A, --B, --C, --D, --nprime VALUE   Hopfield constants (default 500, 500, 200, 500, 15)",
+            "  --attempts N       Hopfield restarts per job (default 2000)",
+            "  --repair           repair the last Hopfield state when no attempt is valid",
+            "  --float            run Hopfield in single precision",
+            "  --gauss-seidel     integrate Hopfield with in-place asynchronous sweeps instead of Euler steps",
+            "  --seeds N          runs per stochastic solver, seeded seed, seed + 1, ... (default 1)",
+            "  --seed S           first seed (default 0)",
+            "  --threads N        concurrent jobs (default: available processors)",
+            "  --time-limit MS    time limit of bnb, 0 for none (default 60000)",
+            "  --mapped DIR       keep distance matrices too large for the heap in memory mapped files under DIR",
+            "  --cache DIR        cache parsed TSPLIB files under DIR (default: no cache)",
+            "  --format csv|json  output format (default csv)",
+            "  --help             print this message");
+
+    private static final String CSV_HEADER = "instance,n,solver,seed,length,valid,repaired,optimal,gap,iterations,attempts,millis,error";
+
+    private final List<String> instances = new ArrayList<>();
+    private List<String> solvers = List.of("hopfield", "nearest");
+    private double A = 500;
+    private double B = 500;
+    private double C = 200;
+    private double D = 500;
+    private double nPrime = 15;
+    private int attempts = 2000;
+    private boolean repair = false;
+    private StatePrecision precision = StatePrecision.DOUBLE;
+    private boolean gaussSeidel = false;
+    private int seeds = 1;
+    private long seed = 0;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private long timeLimitMillis = 60000;
+    private Path mappedDirectory;
+    private Path cacheDirectory;
+    private boolean json = false;
+    private boolean help = false;
+
+    public static void main(String[] args) {
+        BatchRunner runner = new BatchRunner();
+        try {
+            runner.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+        }
+        if (runner.help) {
+            System.out.println(USAGE);
+            return;
+        }
+        try {
+            runner.run(System.out);
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.exit(1);
+        }
+    }
+
+    public void parse(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (!arg.startsWith("--")) {
+                instances.add(arg);
+                continue;
+            }
+            switch (arg) {
+                case "--repair":
+                    repair = true;
+                    break;
+                case "--float":
+                    precision = StatePrecision.FLOAT;
+                    break;
+                case "--gauss-seidel":
+                    gaussSeidel = true;
+                    break;
+                case "--help":
+                    help = true;
+                    break;
+                default:
+                    if (i + 1 >= args.length) {
+                        throw new IllegalArgumentException("Missing value for " + arg);
+                    }
+                    option(arg, args[++i]);
+            }
+        }
+        if (instances.isEmpty() && !help) {
+            throw new IllegalArgumentException("No instances given");
+        }
+    }
+
+    private void option(String name, String value) {
+        try {
+            switch (name) {
+                case "--solvers":
+                    solvers = Arrays.asList(value.toLowerCase(Locale.ROOT).split(","));
+                    for (String solver : solvers) {
+                        if (!List.of("hopfield", "nearest", "local", "exact", "bnb", "random").contains(solver)) {
+                            throw new IllegalArgumentException("Unknown solver " + solver);
+                        }
+                    }
+                    break;
+                case "--A":
+                    A = Double.parseDouble(value);
+                    break;
+                case "--B":
+                    B = Double.parseDouble(value);
+                    break;
+                case "--C":
+                    C = Double.parseDouble(value);
+                    break;
+                case "--D":
+                    D = Double.parseDouble(value);
+                    break;
+                case "--nprime":
+                    nPrime = Double.parseDouble(value);
+                    break;
+                case "--attempts":
+                    attempts = Integer.parseInt(value);
+                    break;
+                case "--seeds":
+                    seeds = Integer.parseInt(value);
+                    break;
+                case "--seed":
+                    seed = Long.parseLong(value);
+                    break;
+                case "--threads":
+                    threads = Integer.parseInt(value);
+                    break;
+                case "--time-limit":
+                    timeLimitMillis = Long.parseLong(value);
+                    break;
+                case "--mapped":
+                    mappedDirectory = Paths.get(value);
+                    break;
+                case "--cache":
+                    cacheDirectory = Paths.get(value);
+                    break;
+                case "--format":
+                    if (!value.equals("csv") && !value.equals("json")) {
+                        throw new IllegalArgumentException("Unknown format " + value);
+                    }
+                    json = value.equals("json");
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + name);
+            }
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid value " + value + " for " + name);
+        }
+    }
+
+    /**
+     * Loads every instance, then runs the jobs and streams their results to out as they finish. Deterministic
+     * solvers (exact, bnb) run once per instance, the others once per seed.
+     */
+    public void run(PrintStream out) throws IOException, InterruptedException {
+        List<Instance> loaded = new ArrayList<>();
+        for (String spec : instances) {
+            loaded.add(load(spec));
+        }
+        if (!json) {
+            out.println(CSV_HEADER);
+            out.flush();
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (Instance instance : loaded) {
+                for (String solver : solvers) {
+                    int runs = solver.equals("exact") || solver.equals("bnb") ? 1 : seeds;
+                    for (int k = 0; k < runs; k++) {
+                        long jobSeed = seed + k;
+                        futures.add(executor.submit(() -> print(out, solve(instance, solver, jobSeed))));
+                    }
+                }
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private Instance load(String spec) throws IOException {
+        if (spec.startsWith("random:")) {
+            String[] parts = spec.split(":");
+            try {
+                int n = Integer.parseInt(parts[1]);
+                long instanceSeed = parts.length > 2 ? Long.parseLong(parts[2]) : seed;
+                return new Instance(spec, TSPUtils.getAdjacencyMatrix(TSPUtils.generateInstance(n, instanceSeed)));
+            } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                throw new IllegalArgumentException("Invalid random instance " + spec);
+            }
+        }
+        TSPLibReader reader = new TSPLibReader();
+        reader.setCacheDirectory(cacheDirectory);
+        TSPLibInstance instance = reader.read(Paths.get(spec));
+        DistanceMatrix graph = mappedDirectory == null ? instance.getDistances()
+                : instance.getDistances(mappedDirectory);
+        return new Instance(instance.getName(), graph);
+    }
+
+    private Result solve(Instance instance, String solver, long jobSeed) {
+        DistanceMatrix graph = instance.graph;
+        int n = graph.size();
+        Result result = new Result(instance.name, n, solver, jobSeed);
+        long start = System.nanoTime();
+        try {
+            int[] tour;
+            switch (solver) {
+                case "hopfield":
+                    HopfieldNetwork hopfield = HopfieldNetwork.create(n, graph, precision);
+                    // jobs already run one per thread, a row-parallel sweep on top would oversubscribe the machine
+                    hopfield.setParallelism(1);
+                    hopfield.setConstants(A, B, C, D, nPrime);
+                    hopfield.setMaxAttempts(attempts);
+                    hopfield.setRepair(repair);
+                    if (gaussSeidel) hopfield.setIntegrator(new GaussSeidelIntegrator());
+                    hopfield.setSeed(jobSeed);
+                    Object[] tuple = hopfield.force();
+                    tour = (int[]) tuple[0];
+                    result.valid = (boolean) tuple[1];
+                    result.repaired = (boolean) tuple[2];
+                    // force() resets the metrics, so they cover every attempt of this job
+                    result.iterations = hopfield.getMetrics().getIterations();
+                    result.attempts = hopfield.getAttempts();
+                    break;
+                case "nearest":
+                    tour = TSPUtils.nearestNeighbor(graph, (int) Math.floorMod(jobSeed, (long) n));
+                    break;
+                case "local":
+                    tour = TSPUtils.nearestNeighbor(graph, (int) Math.floorMod(jobSeed, (long) n));
+                    LocalSearch search = new LocalSearch(graph, Math.min(10, n - 1));
+                    tour = search.improve(tour);
+                    result.iterations = search.getMoves();
+                    break;
+                case "exact":
+                    tour = TSPUtils.solveExact(graph);
+                    result.optimal = true;
+                    result.gap = 0;
+                    break;
+                case "bnb":
+                    BranchAndBoundSolver bnb = new BranchAndBoundSolver(graph);
+                    bnb.setThreads(1);
+                    bnb.setTimeLimitMillis(timeLimitMillis);
+                    tour = bnb.solve();
+                    result.iterations = bnb.getNodes();
+                    result.optimal = bnb.isOptimal();
+                    result.gap = bnb.getGap();
+                    break;
+                default:
+                    tour = TSPUtils.randomTour(n, jobSeed);
+            }
+            if (!solver.equals("hopfield")) {
+                result.valid = true;
+            }
+            // the state of an invalid Hopfield run does not decode to a permutation, so it has no length
+            if (result.valid) {
+                result.length = TSPUtils.fitnessFunction(graph, tour);
+            }
+        } catch (RuntimeException e) {
+            result.error = e.getClass().getSimpleName() + ": " + e.getMessage();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            result.error = e.getClass().getSimpleName() + ": " + e.getMessage();
+        }
+        result.millis = (System.nanoTime() - start) / 1e6;
+        return result;
+    }
+
+    private void print(PrintStream out, Result result) {
+        String line;
+        if (json) {
+            line = String.format(Locale.ROOT, "{\"instance\":%s,\"n\":%d,\"solver\":\"%s\",\"seed\":%d,\"length\":%s,"
+                            + "\"valid\":%b,\"repaired\":%b,\"optimal\":%s,\"gap\":%s,\"iterations\":%d,\"attempts\":%s,\"millis\":%.3f,\"error\":%s}",
+                    quote(result.instance), result.n, result.solver, result.seed,
+                    Double.isNaN(result.length) ? "null" : String.format(Locale.ROOT, "%.6f", result.length),
+                    result.valid, result.repaired, result.optimal, number(result.gap, "null"),
+                    result.iterations, result.attempts, result.millis,
+                    result.error == null ? "null" : quote(result.error));
+        } else {
+            line = String.format(Locale.ROOT, "%s,%d,%s,%d,%s,%b,%b,%s,%s,%d,%s,%.3f,%s",
+                    csv(result.instance), result.n, result.solver, result.seed,
+                    Double.isNaN(result.length) ? "" : String.format(Locale.ROOT, "%.6f", result.length),
+                    result.valid, result.repaired, result.optimal == null ? "" : result.optimal,
+                    number(result.gap, ""), result.iterations, result.attempts == null ? "" : result.attempts,
+                    result.millis,
+                    result.error == null ? "" : csv(result.error));
+        }
+        synchronized (out) {
+            out.println(line);
+            out.flush();
+        }
+    }
+
+    private static String number(double value, String missing) {
+        return Double.isFinite(value) ? String.format(Locale.ROOT, "%.6f", value) : missing;
+    }
+
+    private static String quote(String text) {
+        return '"' + text.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n") + '"';
+    }
+
+    private static String csv(String text) {
+        if (text.indexOf(',') < 0 && text.indexOf('"') < 0 && text.indexOf('\n') < 0) return text;
+        return '"' + text.replace("\"", "\"\"") + '"';
+    }
+
+    private static class Instance {
+        final String name;
+        final DistanceMatrix graph;
+
+        Instance(String name, DistanceMatrix graph) {
+            this.name = name;
+            this.graph = graph;
+        }
+    }
+
+    private static class Result {
+        final String instance;
+        final int n;
+        final String solver;
+        final long seed;
+        double length = Double.NaN;
+        boolean valid;
+        boolean repaired;
+        // only known for exact and bnb
+        Boolean optimal;
+        double gap = Double.NaN;
+        long iterations;
+        // only known for hopfield
+        Integer attempts;
+        double millis;
+        String error;
+
+        Result(String instance, int n, String solver, long seed) {
+            this.instance = instance;
+            this.n = n;
+            this.solver = solver;
+            this.seed = seed;
+        }
+    }
+}
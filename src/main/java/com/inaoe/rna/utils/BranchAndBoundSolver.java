@@ -0,0 +1,371 @@
+package com.inaoe.rna.utils;
+
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Exact depth-first branch and bound. Tours are built as paths from city 0, and a partial path is pruned when its
+ * cost plus a lower bound on completing it reaches the best known tour. The lower bound is a spanning tree over the
+ * unvisited cities and the two path ends, with the node penalties found by subgradient optimisation of the
+ * Held-Karp 1-tree bound at the root. The upper bound starts from a nearest neighbour tour improved by
+ * {@link LocalSearch}. Subtrees below the first two cities are solved concurrently, and when the time limit is hit
+ * the best tour is returned with the gap that is still unproven.
+ */
+@Getter
+public class BranchAndBoundSolver {
+
+    private static final double EPSILON = 1e-9;
+    private static final int SUBGRADIENT_ITERATIONS = 1000;
+
+    private final DistanceMatrix D;
+    private final int n;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private long timeLimitMillis = 0;
+    private int[] initialTour;
+
+    private double[] pi;
+    // every other city of each city, closest first
+    private NeighborList order;
+    private long deadline;
+
+    private volatile double upperBound;
+    private int[] bestTour;
+    private double rootBound;
+    private double lowerBound;
+    private boolean optimal;
+    private final AtomicLong nodes = new AtomicLong();
+    private long elapsedNanos;
+
+    public BranchAndBoundSolver(DistanceMatrix D) {
+        this.D = D;
+        this.n = D.size();
+    }
+
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    /**
+     * Stops the search after the given time, 0 means no limit.
+     */
+    public void setTimeLimitMillis(long timeLimitMillis) {
+        this.timeLimitMillis = timeLimitMillis;
+    }
+
+    /**
+     * Uses the given tour as the first upper bound instead of building one.
+     */
+    public void setInitialTour(int[] initialTour) {
+        this.initialTour = initialTour;
+    }
+
+    /**
+     * Relative distance between the best tour and the proven lower bound, 0 when the tour is optimal.
+     */
+    public double getGap() {
+        return lowerBound <= 0 ? Double.POSITIVE_INFINITY : (upperBound - lowerBound) / lowerBound;
+    }
+
+    public long getNodes() {
+        return nodes.get();
+    }
+
+    public int[] solve() throws InterruptedException {
+        long start = System.nanoTime();
+        deadline = timeLimitMillis > 0 ? start + timeLimitMillis * 1_000_000 : Long.MAX_VALUE;
+        nodes.set(0);
+
+        if (initialTour == null) {
+            int[] tour = TSPUtils.nearestNeighbor(D, 0);
+            bestTour = n >= 5 ? new LocalSearch(D, Math.min(10, n - 1)).improve(tour) : tour;
+        } else {
+            bestTour = initialTour.clone();
+        }
+        upperBound = TSPUtils.fitnessFunction(D, bestTour);
+        if (n <= 3) {
+            lowerBound = upperBound;
+            optimal = true;
+            elapsedNanos = System.nanoTime() - start;
+            return bestTour;
+        }
+
+        order = NeighborList.build(D, n - 1);
+        rootBound = subgradient();
+
+        // one subtree per choice of the first two cities after 0
+        List<Subtree> subtrees = new ArrayList<>();
+        for (int a = 1; a < n; a++) {
+            for (int b = 1; b < n; b++) {
+                if (a == b) continue;
+                Subtree subtree = new Subtree(a, b);
+                subtree.bound = D.get(0, a) + D.get(a, b) + new Search(subtree).pathBound(b, new boolean[n], 0, a);
+                subtrees.add(subtree);
+            }
+        }
+        subtrees.sort(Comparator.comparingDouble(s -> s.bound));
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (Subtree subtree : subtrees) {
+                futures.add(executor.submit(() -> new Search(subtree).run()));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // the optimum is either the best tour or inside a subtree that was not finished
+        double open = upperBound;
+        for (Subtree subtree : subtrees) {
+            if (!subtree.finished && subtree.bound < open) open = subtree.bound;
+        }
+        lowerBound = Math.min(upperBound, Math.max(rootBound, open));
+        optimal = upperBound - lowerBound <= EPSILON * Math.max(1, upperBound);
+        if (optimal) lowerBound = upperBound;
+        elapsedNanos = System.nanoTime() - start;
+        return bestTour.clone();
+    }
+
+    private synchronized void offer(int[] tour, double length) {
+        if (length < upperBound - EPSILON) {
+            upperBound = length;
+            bestTour = tour.clone();
+        }
+    }
+
+    /**
+     * Maximises the Held-Karp 1-tree bound over the node penalties pi and keeps the best ones for the search.
+     */
+    private double subgradient() {
+        pi = new double[n];
+        double[] current = new double[n];
+        int[] degree = new int[n];
+        double best = Double.NEGATIVE_INFINITY;
+        double lambda = 2;
+        int stall = 0;
+        for (int iter = 0; iter < SUBGRADIENT_ITERATIONS && lambda > 1e-6; iter++) {
+            double bound = oneTree(current, degree);
+            if (bound > best + EPSILON) {
+                best = bound;
+                System.arraycopy(current, 0, pi, 0, n);
+                stall = 0;
+            } else if (++stall >= 20) {
+                lambda /= 2;
+                stall = 0;
+            }
+            double norm = 0;
+            for (int x = 0; x < n; x++) {
+                norm += (degree[x] - 2) * (degree[x] - 2);
+            }
+            // the 1-tree is a tour, nothing left to improve
+            if (norm == 0) break;
+            double step = lambda * (upperBound - bound) / norm;
+            for (int x = 0; x < n; x++) {
+                current[x] += step * (degree[x] - 2);
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Minimum 1-tree under penalties p: a spanning tree of cities 1..n-1 plus the two cheapest edges of city 0.
+     * Fills degree and returns the tree cost minus 2 * sum(p).
+     */
+    private double oneTree(double[] p, int[] degree) {
+        Arrays.fill(degree, 0);
+        double[] key = new double[n];
+        int[] link = new int[n];
+        boolean[] inTree = new boolean[n];
+        Arrays.fill(key, Double.POSITIVE_INFINITY);
+        key[1] = 0;
+        link[1] = -1;
+        double cost = 0;
+        for (int step = 1; step < n; step++) {
+            int u = -1;
+            for (int v = 1; v < n; v++) {
+                if (!inTree[v] && (u < 0 || key[v] < key[u])) u = v;
+            }
+            inTree[u] = true;
+            cost += key[u];
+            if (link[u] >= 0) {
+                degree[u]++;
+                degree[link[u]]++;
+            }
+            for (int v = 1; v < n; v++) {
+                double c = D.get(u, v) + p[u] + p[v];
+                if (!inTree[v] && c < key[v]) {
+                    key[v] = c;
+                    link[v] = u;
+                }
+            }
+        }
+        int first = -1;
+        int second = -1;
+        for (int v = 1; v < n; v++) {
+            double c = D.get(0, v) + p[0] + p[v];
+            if (first < 0 || c < D.get(0, first) + p[0] + p[first]) {
+                second = first;
+                first = v;
+            } else if (second < 0 || c < D.get(0, second) + p[0] + p[second]) {
+                second = v;
+            }
+        }
+        cost += D.get(0, first) + p[0] + p[first] + D.get(0, second) + p[0] + p[second];
+        degree[0] = 2;
+        degree[first]++;
+        degree[second]++;
+        double sum = 0;
+        for (double value : p) sum += value;
+        return cost - 2 * sum;
+    }
+
+    private static class Subtree {
+        final int a;
+        final int b;
+        double bound;
+        volatile boolean finished;
+
+        Subtree(int a, int b) {
+            this.a = a;
+            this.b = b;
+        }
+    }
+
+    /**
+     * Depth-first search of one subtree, with its own scratch arrays.
+     */
+    private class Search {
+        private final Subtree subtree;
+        private final int[] path = new int[n];
+        private final boolean[] visited = new boolean[n];
+        private final double[] key = new double[n];
+        private final int[] members = new int[n];
+        private boolean timedOut;
+        // nodes expanded by this search, added to the shared total once the subtree is done
+        private long expanded;
+
+        Search(Subtree subtree) {
+            this.subtree = subtree;
+        }
+
+        void run() {
+            if (subtree.bound >= upperBound - EPSILON || subtree.a == n - 1) {
+                subtree.finished = true;
+                return;
+            }
+            // subtrees still queued at the deadline are left unfinished without expanding any node
+            if (System.nanoTime() > deadline) return;
+            path[0] = 0;
+            path[1] = subtree.a;
+            path[2] = subtree.b;
+            visited[0] = visited[subtree.a] = visited[subtree.b] = true;
+            int remainingAbove = 0;
+            for (int c = subtree.a + 1; c < n; c++) {
+                if (!visited[c]) remainingAbove++;
+            }
+            dfs(3, D.get(0, subtree.a) + D.get(subtree.a, subtree.b), remainingAbove);
+            nodes.addAndGet(expanded);
+            subtree.finished = !timedOut;
+        }
+
+        /**
+         * Tours are only counted in the direction where the second city is smaller than the last one, so a path
+         * is dropped once no unvisited city above path[1] is left to end it.
+         */
+        private void dfs(int depth, double cost, int remainingAbove) {
+            if (timedOut) return;
+            if ((++expanded & 1023) == 0 && System.nanoTime() > deadline) {
+                timedOut = true;
+                return;
+            }
+            int last = path[depth - 1];
+            if (depth == n) {
+                if (last > path[1]) {
+                    double length = cost + D.get(last, 0);
+                    if (length < upperBound - EPSILON) offer(path, length);
+                }
+                return;
+            }
+            if (remainingAbove == 0) return;
+            if (cost + pathBound(last, visited, 0, -1) >= upperBound - EPSILON) return;
+
+            int[] offsets = order.getOffsets();
+            int[] cities = order.getNeighbors();
+            double[] weights = order.getWeights();
+            for (int e = offsets[last]; e < offsets[last + 1]; e++) {
+                int c = cities[e];
+                if (visited[c] || c == 0) continue;
+                double next = cost + weights[e];
+                if (next >= upperBound - EPSILON) break;
+                visited[c] = true;
+                path[depth] = c;
+                dfs(depth + 1, next, remainingAbove - (c > path[1] ? 1 : 0));
+                visited[c] = false;
+                if (timedOut) return;
+            }
+        }
+
+        /**
+         * Lower bound on a path from last through every unvisited city to end: the penalised spanning tree over
+         * those cities minus their penalties, counted twice for inner cities and once for the two ends. extra is
+         * treated as visited, which lets the bound of a subtree be computed before its search starts.
+         */
+        double pathBound(int last, boolean[] visited, int end, int extra) {
+            int size = 0;
+            members[size++] = last;
+            members[size++] = end;
+            double penalties = pi[last] + pi[end];
+            for (int c = 0; c < n; c++) {
+                if (!visited[c] && c != last && c != end && c != extra) {
+                    members[size++] = c;
+                    penalties += 2 * pi[c];
+                }
+            }
+            if (size == 2) return D.get(last, end);
+
+            // Prim over members, key[k] is the cheapest penalised edge from member k into the tree
+            Arrays.fill(key, 0, size, Double.POSITIVE_INFINITY);
+            key[0] = 0;
+            double tree = 0;
+            for (int added = 0; added < size; added++) {
+                int u = -1;
+                for (int k = added; k < size; k++) {
+                    if (u < 0 || key[k] < key[u]) u = k;
+                }
+                // move the chosen member to position added so the unprocessed ones stay contiguous
+                swap(u, added);
+                tree += key[added];
+                int cu = members[added];
+                for (int k = added + 1; k < size; k++) {
+                    int ck = members[k];
+                    double c = D.get(cu, ck) + pi[cu] + pi[ck];
+                    if (c < key[k]) key[k] = c;
+                }
+            }
+            return tree - penalties;
+        }
+
+        private void swap(int i, int j) {
+            int m = members[i];
+            members[i] = members[j];
+            members[j] = m;
+            double k = key[i];
+            key[i] = key[j];
+            key[j] = k;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.inaoe.rna.utils;
+
+import java.util.List;
+
+/**
+ * Distances computed on demand from the coordinates, for instances where even a packed or mapped matrix is too
+ * large. Only the coordinates are stored, in one flat array. Plain Euclidean distances work in any dimension, the
+ * other TSPLIB edge weight types on {x, y} pairs.
+ */
+public class CoordinateDistanceMatrix implements DistanceMatrix {
+
+    private final int n;
+    private final int dimension;
+    private final double[] coords;
+    private final EdgeWeightType type;
+
+    public CoordinateDistanceMatrix(List<double[]> nodes) {
+        this(nodes, EdgeWeightType.EUCLIDEAN);
+    }
+
+    public CoordinateDistanceMatrix(List<double[]> nodes, EdgeWeightType type) {
+        this(flatten(nodes), nodes.isEmpty() ? 0 : nodes.get(0).length, type);
+    }
+
+    /**
+     * Uses coords, city x at x * dimension, without copying it.
+     */
+    CoordinateDistanceMatrix(double[] coords, int dimension, EdgeWeightType type) {
+        if (type == EdgeWeightType.EXPLICIT) {
+            throw new IllegalArgumentException("Explicit distances are not computed from coordinates");
+        }
+        if (type != EdgeWeightType.EUCLIDEAN && dimension != 2) {
+            throw new IllegalArgumentException(type + " distances need 2 coordinates per city, not " + dimension);
+        }
+        this.n = dimension == 0 ? 0 : coords.length / dimension;
+        this.dimension = dimension;
+        this.coords = coords;
+        this.type = type;
+    }
+
+    private static double[] flatten(List<double[]> nodes) {
+        int dimension = nodes.isEmpty() ? 0 : nodes.get(0).length;
+        double[] coords = new double[nodes.size() * dimension];
+        for (int x = 0; x < nodes.size(); x++) {
+            System.arraycopy(nodes.get(x), 0, coords, x * dimension, dimension);
+        }
+        return coords;
+    }
+
+    @Override
+    public int size() {
+        return n;
+    }
+
+    @Override
+    public double get(int x, int y) {
+        int a = x * dimension;
+        int b = y * dimension;
+        if (type != EdgeWeightType.EUCLIDEAN) {
+            // GEO rounds up, so it would give 1 km from a city to itself
+            if (x == y) return 0;
+            return type.distance(coords[a], coords[a + 1], coords[b], coords[b + 1]);
+        }
+        double sum = 0;
+        for (int k = 0; k < dimension; k++) {
+            double diff = coords[a + k] - coords[b + k];
+            sum += diff * diff;
+        }
+        return Math.sqrt(sum);
+    }
+}
@@ -0,0 +1,11 @@
+package com.inaoe.rna.utils;
+
+/**
+ * Symmetric distances between the cities of an instance, with a zero diagonal.
+ */
+public interface DistanceMatrix {
+
+    int size();
+
+    double get(int x, int y);
+}
@@ -0,0 +1,50 @@
+package com.inaoe.rna.utils;
+
+import java.util.Arrays;
+
+/**
+ * Growable list of primitive doubles, used where a {@code List<Double>} would box every value.
+ */
+public class DoubleList {
+
+    private double[] values;
+    private int size;
+
+    public DoubleList() {
+        this(64);
+    }
+
+    public DoubleList(int capacity) {
+        this.values = new double[Math.max(1, capacity)];
+    }
+
+    public void add(double value) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+        }
+        values[size++] = value;
+    }
+
+    public double get(int index) {
+        if (index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + size);
+        }
+        return values[index];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public double[] toArray() {
+        return Arrays.copyOf(values, size);
+    }
+}
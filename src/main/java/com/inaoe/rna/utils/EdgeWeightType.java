@@ -0,0 +1,91 @@
+package com.inaoe.rna.utils;
+
+/**
+ * How a TSPLIB instance turns its coordinates into distances, following the TSPLIB 95 definitions.
+ */
+public enum EdgeWeightType {
+
+    /**
+     * Plain Euclidean distance without rounding, used for files without a header.
+     */
+    EUCLIDEAN {
+        @Override
+        public double distance(double xa, double ya, double xb, double yb) {
+            double dx = xa - xb;
+            double dy = ya - yb;
+            return Math.sqrt(dx * dx + dy * dy);
+        }
+    },
+
+    /**
+     * Euclidean distance rounded to the nearest integer.
+     */
+    EUC_2D {
+        @Override
+        public double distance(double xa, double ya, double xb, double yb) {
+            return (int) (EUCLIDEAN.distance(xa, ya, xb, yb) + 0.5);
+        }
+    },
+
+    /**
+     * Euclidean distance rounded up.
+     */
+    CEIL_2D {
+        @Override
+        public double distance(double xa, double ya, double xb, double yb) {
+            return Math.ceil(EUCLIDEAN.distance(xa, ya, xb, yb));
+        }
+    },
+
+    /**
+     * Pseudo-Euclidean distance of the att48 and att532 instances.
+     */
+    ATT {
+        @Override
+        public double distance(double xa, double ya, double xb, double yb) {
+            double dx = xa - xb;
+            double dy = ya - yb;
+            double r = Math.sqrt((dx * dx + dy * dy) / 10);
+            int t = (int) (r + 0.5);
+            return t < r ? t + 1 : t;
+        }
+    },
+
+    /**
+     * Great circle distance in km, with x the latitude and y the longitude written as DDD.MM degrees and minutes.
+     */
+    GEO {
+        private static final double PI = 3.141592;
+        private static final double RRR = 6378.388;
+
+        @Override
+        public double distance(double xa, double ya, double xb, double yb) {
+            double latA = radians(xa);
+            double lonA = radians(ya);
+            double latB = radians(xb);
+            double lonB = radians(yb);
+            double q1 = Math.cos(lonA - lonB);
+            double q2 = Math.cos(latA - latB);
+            double q3 = Math.cos(latA + latB);
+            return (int) (RRR * Math.acos(0.5 * ((1 + q1) * q2 - (1 - q1) * q3)) + 1);
+        }
+
+        private double radians(double value) {
+            int degrees = (int) value;
+            double minutes = value - degrees;
+            return PI * (degrees + 5 * minutes / 3) / 180;
+        }
+    },
+
+    /**
+     * Distances listed in the file itself.
+     */
+    EXPLICIT {
+        @Override
+        public double distance(double xa, double ya, double xb, double yb) {
+            throw new UnsupportedOperationException("Explicit distances are not computed from coordinates");
+        }
+    };
+
+    public abstract double distance(double xa, double ya, double xb, double yb);
+}
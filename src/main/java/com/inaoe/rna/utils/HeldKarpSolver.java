@@ -0,0 +1,155 @@
+package com.inaoe.rna.utils;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Exact Held-Karp dynamic program over bitmasks of visited cities, kept in primitive arrays: a float cost and a byte
+ * predecessor per (subset, last city). City 0 is the fixed start, subsets are processed by size and every size
+ * layer is split over the pool with {@link RangeTask}s. Memory grows as n 2^n, so the solver refuses instances that
+ * would not fit in its budget before allocating anything.
+ * <p>
+ * Path costs are summed in float to keep the table at 5 bytes per entry, so the tour is only optimal up to float
+ * rounding: a partial cost carries a relative error of up to about n 2^-24, and tours closer than that in length may
+ * be ranked the wrong way round. With integer distances, as in TSPLIB, every sum is exact while the tour length stays
+ * below 2^24.
+ */
+public class HeldKarpSolver {
+
+    // float cost + byte parent per entry
+    private static final int BYTES_PER_ENTRY = 5;
+    private static final int MAX_CITIES = 31;
+
+    private final DistanceMatrix D;
+    private long memoryBudget = Runtime.getRuntime().maxMemory() / 2;
+    private ForkJoinPool pool = ForkJoinPool.commonPool();
+    // whether pool was created by setParallelism and has to be shut down when replaced
+    private boolean ownsPool;
+
+    public HeldKarpSolver(DistanceMatrix D) {
+        this.D = D;
+    }
+
+    public void setMemoryBudget(long bytes) {
+        this.memoryBudget = bytes;
+    }
+
+    /**
+     * Spreads the layers over a pool of the given size, the common pool when it has that size. A pool created by an
+     * earlier call is shut down.
+     */
+    public void setParallelism(int threads) {
+        if (ownsPool) pool.shutdown();
+        ownsPool = threads != ForkJoinPool.getCommonPoolParallelism();
+        pool = ownsPool ? new ForkJoinPool(threads) : ForkJoinPool.commonPool();
+    }
+
+    /**
+     * Bytes the tables need for n cities.
+     */
+    public static long requiredMemory(int n) {
+        if (n <= 1) return 0;
+        int m = n - 1;
+        return (1L << m) * m * BYTES_PER_ENTRY;
+    }
+
+    public int[] solve() {
+        int n = D.size();
+        if (n <= 3) {
+            return IntStream.range(0, n).toArray();
+        }
+        long required = requiredMemory(n);
+        if (n > MAX_CITIES || required > memoryBudget || (1L << (n - 1)) * (n - 1) > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException(String.format(
+                    "Held-Karp on %d cities needs %,d MB for its tables, the budget is %,d MB",
+                    n, required >> 20, memoryBudget >> 20));
+        }
+
+        // cities 1..n-1 are bits 0..m-1
+        int m = n - 1;
+        int subsets = 1 << m;
+        float[] cost = new float[subsets * m];
+        byte[] parent = new byte[subsets * m];
+        // the inner loop reads every pair many times, so the distances between cities 1..n-1 are copied once
+        float[] d = new float[m * m];
+        for (int k = 0; k < m; k++) {
+            for (int j = 0; j < m; j++) {
+                d[k * m + j] = (float) D.get(k + 1, j + 1);
+            }
+        }
+
+        for (int j = 0; j < m; j++) {
+            cost[(1 << j) * m + j] = (float) D.get(0, j + 1);
+            parent[(1 << j) * m + j] = -1;
+        }
+        for (int size = 2; size <= m; size++) {
+            int[] layer = subsetsOfSize(m, size);
+            RangeTask.run(pool, layer.length, (from, to) -> {
+                for (int idx = from; idx < to; idx++) {
+                    int mask = layer[idx];
+                    for (int j = 0; j < m; j++) {
+                        if ((mask & (1 << j)) == 0) continue;
+                        int prev = mask ^ (1 << j);
+                        float best = Float.POSITIVE_INFINITY;
+                        int bestK = 0;
+                        for (int k = 0; k < m; k++) {
+                            if ((prev & (1 << k)) == 0) continue;
+                            float c = cost[prev * m + k] + d[k * m + j];
+                            if (c < best) {
+                                best = c;
+                                bestK = k;
+                            }
+                        }
+                        cost[mask * m + j] = best;
+                        parent[mask * m + j] = (byte) bestK;
+                    }
+                }
+            });
+        }
+
+        int full = subsets - 1;
+        float best = Float.POSITIVE_INFINITY;
+        int last = 0;
+        for (int j = 0; j < m; j++) {
+            float c = cost[full * m + j] + (float) D.get(j + 1, 0);
+            if (c < best) {
+                best = c;
+                last = j;
+            }
+        }
+
+        int[] tour = new int[n];
+        int mask = full;
+        for (int i = n - 1; i >= 1; i--) {
+            tour[i] = last + 1;
+            int prev = parent[mask * m + last];
+            mask ^= 1 << last;
+            last = prev;
+        }
+        tour[0] = 0;
+        return tour;
+    }
+
+    /**
+     * All m-bit masks with the given number of bits set, in increasing order (Gosper's hack).
+     */
+    private static int[] subsetsOfSize(int m, int size) {
+        int[] masks = new int[binomial(m, size)];
+        int mask = (1 << size) - 1;
+        for (int i = 0; i < masks.length; i++) {
+            masks[i] = mask;
+            int c = mask & -mask;
+            int r = mask + c;
+            mask = (((r ^ mask) >>> 2) / c) | r;
+        }
+        return masks;
+    }
+
+    private static int binomial(int m, int k) {
+        long result = 1;
+        for (int i = 1; i <= k; i++) {
+            result = result * (m - k + i) / i;
+        }
+        return (int) result;
+    }
+}
@@ -1,18 +1,125 @@
 package com.inaoe.rna.utils;
 
+import java.util.Arrays;
+
 public class HopfieldUtils {
-    public static Object[] getDistanceBounds(double[][] D) {
-        int n = D.length;
-        double dL = D[0][1];
-        double dU = D[0][1];
-        for (int i = 0; i < n; i++) {
-            for (int j = 0; j < n; j++) {
-                if (i != j) {
-                    if (dL > D[i][j]) dL = D[i][j];
-                    if (dU < D[i][j]) dU = D[i][j];
+
+    private static final int BLOCK = 64;
+
+    /**
+     * Computes out = D * V for row-major n x n matrices V and out. The loops run x, y, k so that both V and out are
+     * walked along their rows, and y and k are tiled so a block of V stays in cache while every row of D is applied
+     * to it.
+     */
+    public static void distanceProduct(DistanceMatrix D, double[] V, double[] out) {
+        distanceProduct(D, V, out, 0, D.size());
+    }
+
+    /**
+     * Same as {@link #distanceProduct(DistanceMatrix, double[], double[])} restricted to the rows [fromRow, toRow) of
+     * out, so disjoint row ranges can be computed concurrently.
+     */
+    public static void distanceProduct(DistanceMatrix D, double[] V, double[] out, int fromRow, int toRow) {
+        int n = D.size();
+        Arrays.fill(out, fromRow * n, toRow * n, 0);
+        for (int yBlock = 0; yBlock < n; yBlock += BLOCK) {
+            int yEnd = Math.min(yBlock + BLOCK, n);
+            for (int kBlock = 0; kBlock < n; kBlock += BLOCK) {
+                int kEnd = Math.min(kBlock + BLOCK, n);
+                for (int x = fromRow; x < toRow; x++) {
+                    int outRow = x * n;
+                    for (int y = yBlock; y < yEnd; y++) {
+                        double d = D.get(x, y);
+                        if (d == 0) continue;
+                        int vRow = y * n;
+                        for (int k = kBlock; k < kEnd; k++) {
+                            out[outRow + k] += d * V[vRow + k];
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Single-precision version of {@link #distanceProduct(DistanceMatrix, double[], double[], int, int)}.
+     */
+    public static void distanceProduct(DistanceMatrix D, float[] V, float[] out, int fromRow, int toRow) {
+        int n = D.size();
+        Arrays.fill(out, fromRow * n, toRow * n, 0);
+        for (int yBlock = 0; yBlock < n; yBlock += BLOCK) {
+            int yEnd = Math.min(yBlock + BLOCK, n);
+            for (int kBlock = 0; kBlock < n; kBlock += BLOCK) {
+                int kEnd = Math.min(kBlock + BLOCK, n);
+                for (int x = fromRow; x < toRow; x++) {
+                    int outRow = x * n;
+                    for (int y = yBlock; y < yEnd; y++) {
+                        float d = (float) D.get(x, y);
+                        if (d == 0) continue;
+                        int vRow = y * n;
+                        for (int k = kBlock; k < kEnd; k++) {
+                            out[outRow + k] += d * V[vRow + k];
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Computes the rows [fromRow, toRow) of out = D * V keeping only the candidate neighbours of every city, which
+     * costs O(n * k) per row instead of O(n^2).
+     */
+    public static void distanceProduct(NeighborList neighbors, double[] V, double[] out, int fromRow, int toRow) {
+        int n = neighbors.getN();
+        int[] offsets = neighbors.getOffsets();
+        int[] cities = neighbors.getNeighbors();
+        double[] weights = neighbors.getWeights();
+        Arrays.fill(out, fromRow * n, toRow * n, 0);
+        for (int x = fromRow; x < toRow; x++) {
+            int outRow = x * n;
+            for (int e = offsets[x]; e < offsets[x + 1]; e++) {
+                double d = weights[e];
+                int vRow = cities[e] * n;
+                for (int k = 0; k < n; k++) {
+                    out[outRow + k] += d * V[vRow + k];
                 }
             }
         }
+    }
+
+    /**
+     * Single-precision version of {@link #distanceProduct(NeighborList, double[], double[], int, int)}.
+     */
+    public static void distanceProduct(NeighborList neighbors, float[] V, float[] out, int fromRow, int toRow) {
+        int n = neighbors.getN();
+        int[] offsets = neighbors.getOffsets();
+        int[] cities = neighbors.getNeighbors();
+        double[] weights = neighbors.getWeights();
+        Arrays.fill(out, fromRow * n, toRow * n, 0);
+        for (int x = fromRow; x < toRow; x++) {
+            int outRow = x * n;
+            for (int e = offsets[x]; e < offsets[x + 1]; e++) {
+                float d = (float) weights[e];
+                int vRow = cities[e] * n;
+                for (int k = 0; k < n; k++) {
+                    out[outRow + k] += d * V[vRow + k];
+                }
+            }
+        }
+    }
+
+    public static Object[] getDistanceBounds(DistanceMatrix D) {
+        int n = D.size();
+        double dL = D.get(0, 1);
+        double dU = D.get(0, 1);
+        for (int i = 0; i < n; i++) {
+            for (int j = i + 1; j < n; j++) {
+                double d = D.get(i, j);
+                if (dL > d) dL = d;
+                if (dU < d) dU = d;
+            }
+        }
         return new Object[]{dL, dU};
     }
 }
@@ -0,0 +1,172 @@
+package com.inaoe.rna.utils;
+
+import java.util.List;
+
+/**
+ * 2-d tree over city coordinates that answers nearest-remaining-city queries and supports deleting cities. The
+ * tree is implicit: the subtree of the range [lo, hi) of order has its splitting city at the middle, so no nodes
+ * are allocated. alive[mid] counts the cities of that range still present, which lets a query skip emptied
+ * subtrees, and deleting a city only walks its path from the root.
+ */
+public class KdTree {
+
+    private final int n;
+    private final double[] xs;
+    private final double[] ys;
+    private final int[] order;
+    private final int[] position;
+    private final boolean[] vertical;
+    private final int[] alive;
+    private final boolean[] removed;
+
+    private double bestDistance;
+    private int best;
+
+    public KdTree(List<double[]> nodes) {
+        n = nodes.size();
+        xs = new double[n];
+        ys = new double[n];
+        order = new int[n];
+        for (int i = 0; i < n; i++) {
+            xs[i] = nodes.get(i)[0];
+            ys[i] = nodes.get(i)[1];
+            order[i] = i;
+        }
+        position = new int[n];
+        vertical = new boolean[n];
+        alive = new int[n];
+        removed = new boolean[n];
+        build(0, n);
+        for (int i = 0; i < n; i++) {
+            position[order[i]] = i;
+        }
+    }
+
+    /**
+     * Copy sharing the tree layout but with all cities present again, so each thread can run its own construction.
+     */
+    private KdTree(KdTree tree) {
+        n = tree.n;
+        xs = tree.xs;
+        ys = tree.ys;
+        order = tree.order;
+        position = tree.position;
+        vertical = tree.vertical;
+        alive = new int[n];
+        removed = new boolean[n];
+        count(0, n);
+    }
+
+    public KdTree copy() {
+        return new KdTree(this);
+    }
+
+    public int size() {
+        return alive.length == 0 ? 0 : alive[n >>> 1];
+    }
+
+    public double distance(int a, int b) {
+        return Math.hypot(xs[a] - xs[b], ys[a] - ys[b]);
+    }
+
+    private void build(int lo, int hi) {
+        if (lo >= hi) return;
+        int mid = (lo + hi) >>> 1;
+        // split along the wider side of the range's bounding box
+        double minX = Double.POSITIVE_INFINITY, maxX = Double.NEGATIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+        for (int i = lo; i < hi; i++) {
+            int c = order[i];
+            minX = Math.min(minX, xs[c]);
+            maxX = Math.max(maxX, xs[c]);
+            minY = Math.min(minY, ys[c]);
+            maxY = Math.max(maxY, ys[c]);
+        }
+        boolean byX = maxX - minX >= maxY - minY;
+        select(lo, hi - 1, mid, byX ? xs : ys);
+        vertical[mid] = byX;
+        alive[mid] = hi - lo;
+        build(lo, mid);
+        build(mid + 1, hi);
+    }
+
+    private void count(int lo, int hi) {
+        if (lo >= hi) return;
+        int mid = (lo + hi) >>> 1;
+        alive[mid] = hi - lo;
+        count(lo, mid);
+        count(mid + 1, hi);
+    }
+
+    /**
+     * Quickselect: puts the k-th smallest city by key at order[k], smaller ones before and larger ones after.
+     */
+    private void select(int lo, int hi, int k, double[] key) {
+        while (lo < hi) {
+            double pivot = key[order[(lo + hi) >>> 1]];
+            int i = lo;
+            int j = hi;
+            while (i <= j) {
+                while (key[order[i]] < pivot) i++;
+                while (key[order[j]] > pivot) j--;
+                if (i <= j) {
+                    int t = order[i];
+                    order[i++] = order[j];
+                    order[j--] = t;
+                }
+            }
+            if (k <= j) hi = j;
+            else if (k >= i) lo = i;
+            else return;
+        }
+    }
+
+    public void remove(int city) {
+        if (removed[city]) return;
+        removed[city] = true;
+        int target = position[city];
+        int lo = 0;
+        int hi = n;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            alive[mid]--;
+            if (target == mid) return;
+            if (target < mid) hi = mid;
+            else lo = mid + 1;
+        }
+    }
+
+    /**
+     * Closest city still in the tree to the given one, or -1 when the tree is empty.
+     */
+    public int nearest(int city) {
+        best = -1;
+        bestDistance = Double.POSITIVE_INFINITY;
+        search(0, n, xs[city], ys[city]);
+        return best;
+    }
+
+    private void search(int lo, int hi, double qx, double qy) {
+        if (lo >= hi) return;
+        int mid = (lo + hi) >>> 1;
+        if (alive[mid] == 0) return;
+        int c = order[mid];
+        if (!removed[c]) {
+            double dx = xs[c] - qx;
+            double dy = ys[c] - qy;
+            double d = dx * dx + dy * dy;
+            if (d < bestDistance) {
+                bestDistance = d;
+                best = c;
+            }
+        }
+        double diff = vertical[mid] ? qx - xs[c] : qy - ys[c];
+        if (diff < 0) {
+            search(lo, mid, qx, qy);
+            if (diff * diff < bestDistance) search(mid + 1, hi, qx, qy);
+        } else {
+            search(mid + 1, hi, qx, qy);
+            if (diff * diff < bestDistance) search(lo, mid, qx, qy);
+        }
+    }
+}
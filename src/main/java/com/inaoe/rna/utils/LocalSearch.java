@@ -0,0 +1,236 @@
+package com.inaoe.rna.utils;
+
+import lombok.Getter;
+
+import java.util.Arrays;
+
+/**
+ * 2-opt and Or-opt improvement of a tour. Moves are only tried towards the candidate neighbours of a city, every
+ * move is evaluated in O(1) from the distance matrix, and cities whose surroundings did not change are skipped via
+ * don't-look bits, so the work grows roughly linearly with the number of cities.
+ */
+@Getter
+public class LocalSearch {
+
+    private static final double EPSILON = 1e-10;
+    private static final int MAX_SEGMENT = 3;
+
+    private final DistanceMatrix D;
+    private final NeighborList neighbors;
+    private int n;
+    private int[] tour;
+    private int[] pos;
+
+    private double initialLength;
+    private double finalLength;
+    private long elapsedNanos;
+    private int moves;
+
+    public LocalSearch(DistanceMatrix D, NeighborList neighbors) {
+        this.D = D;
+        this.neighbors = neighbors;
+    }
+
+    public LocalSearch(DistanceMatrix D, int k) {
+        this(D, NeighborList.build(D, k));
+    }
+
+    /**
+     * Returns an improved copy of tour. The length before and after and the time spent are kept in this instance.
+     */
+    public int[] improve(int[] initial) {
+        long start = System.nanoTime();
+        n = initial.length;
+        tour = initial.clone();
+        pos = new int[n];
+        for (int i = 0; i < n; i++) pos[tour[i]] = i;
+        moves = 0;
+        initialLength = TSPUtils.fitnessFunction(D, tour);
+
+        if (n >= 5) {
+            // ring buffer of the cities whose don't-look bit is off, each is queued at most once so n slots suffice
+            int[] active = tour.clone();
+            int head = 0;
+            int size = n;
+            boolean[] queued = new boolean[n];
+            Arrays.fill(queued, true);
+            int[] touched = new int[6];
+            while (size > 0) {
+                int a = active[head];
+                head = head + 1 == n ? 0 : head + 1;
+                size--;
+                queued[a] = false;
+                int count = twoOpt(a, touched);
+                if (count == 0) count = orOpt(a, touched);
+                for (int t = 0; t < count; t++) {
+                    if (!queued[touched[t]]) {
+                        queued[touched[t]] = true;
+                        int tail = head + size < n ? head + size : head + size - n;
+                        active[tail] = touched[t];
+                        size++;
+                    }
+                }
+            }
+        }
+
+        finalLength = TSPUtils.fitnessFunction(D, tour);
+        elapsedNanos = System.nanoTime() - start;
+        return tour;
+    }
+
+    /**
+     * Relative improvement of the last call, (initial - final) / initial.
+     */
+    public double getImprovement() {
+        return initialLength == 0 ? 0 : (initialLength - finalLength) / initialLength;
+    }
+
+    private int next(int city) {
+        return tour[pos[city] + 1 == n ? 0 : pos[city] + 1];
+    }
+
+    private int prev(int city) {
+        return tour[pos[city] == 0 ? n - 1 : pos[city] - 1];
+    }
+
+    /**
+     * Tries to replace an edge of a by an edge to one of its candidates. Applies the first improving move and
+     * returns the number of cities written to touched, or 0 when there is none.
+     */
+    private int twoOpt(int a, int[] touched) {
+        int[] offsets = neighbors.getOffsets();
+        int[] cities = neighbors.getNeighbors();
+        for (int dir = 0; dir < 2; dir++) {
+            int b = dir == 0 ? next(a) : prev(a);
+            double dAB = D.get(a, b);
+            for (int e = offsets[a]; e < offsets[a + 1]; e++) {
+                int c = cities[e];
+                double dAC = D.get(a, c);
+                // candidates are sorted, no later one can give a gain
+                if (dAC >= dAB) break;
+                int d = dir == 0 ? next(c) : prev(c);
+                if (c == b || d == a) continue;
+                double delta = dAC + D.get(b, d) - dAB - D.get(c, d);
+                if (delta < -EPSILON) {
+                    if (dir == 0) {
+                        reverse(pos[b], pos[c]);
+                    } else {
+                        reverse(pos[a], pos[d]);
+                    }
+                    moves++;
+                    touched[0] = a;
+                    touched[1] = b;
+                    touched[2] = c;
+                    touched[3] = d;
+                    return 4;
+                }
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Tries to move the segment of 1 to 3 cities starting at a next to one of a's candidates, in either orientation.
+     */
+    private int orOpt(int a, int[] touched) {
+        int[] offsets = neighbors.getOffsets();
+        int[] cities = neighbors.getNeighbors();
+        for (int length = 1; length <= MAX_SEGMENT && length + 3 <= n; length++) {
+            int first = a;
+            int last = tour[(pos[a] + length - 1) % n];
+            int p = prev(first);
+            int nx = next(last);
+            double removeGain = D.get(p, first) + D.get(last, nx) - D.get(p, nx);
+            if (removeGain <= EPSILON) continue;
+
+            for (int e = offsets[a]; e < offsets[a + 1]; e++) {
+                int c = cities[e];
+                if (D.get(c, first) >= removeGain) break;
+                if (inSegment(c, first, length)) continue;
+
+                // c, first..last, next(c)
+                int d = next(c);
+                if (!inSegment(d, first, length)) {
+                    double add = D.get(c, first) + D.get(last, d) - D.get(c, d);
+                    if (add < removeGain - EPSILON) {
+                        moveSegment(first, length, c, false);
+                        return touch(touched, p, nx, first, last, c, d);
+                    }
+                }
+                // prev(c), last..first, c
+                d = prev(c);
+                if (!inSegment(d, first, length)) {
+                    double add = D.get(d, last) + D.get(first, c) - D.get(d, c);
+                    if (add < removeGain - EPSILON) {
+                        moveSegment(first, length, d, true);
+                        return touch(touched, p, nx, first, last, c, d);
+                    }
+                }
+            }
+        }
+        return 0;
+    }
+
+    private int touch(int[] touched, int... cities) {
+        System.arraycopy(cities, 0, touched, 0, cities.length);
+        moves++;
+        return cities.length;
+    }
+
+    private boolean inSegment(int city, int first, int length) {
+        return (pos[city] - pos[first] + n) % n < length;
+    }
+
+    /**
+     * Reverses the tour between positions i and j walking forward, reversing the complementary part instead when
+     * it is shorter, which describes the same cycle.
+     */
+    private void reverse(int i, int j) {
+        int length = (j - i + n) % n + 1;
+        if (2 * length > n) {
+            int tmp = i;
+            i = (j + 1) % n;
+            j = (tmp - 1 + n) % n;
+            length = n - length;
+        }
+        for (int s = 0; s < length / 2; s++) {
+            int ci = tour[i];
+            int cj = tour[j];
+            tour[i] = cj;
+            pos[cj] = i;
+            tour[j] = ci;
+            pos[ci] = j;
+            i = i + 1 == n ? 0 : i + 1;
+            j = j == 0 ? n - 1 : j - 1;
+        }
+    }
+
+    /**
+     * Removes the segment of length cities starting at first and puts it between after and its successor, reversed
+     * if asked. Done in place as two 2-opt reversals, plus one of the segment itself to keep its orientation, so it
+     * costs the tour distance between the segment and after instead of O(n), and allocates nothing.
+     */
+    private void moveSegment(int first, int length, int after, boolean reversed) {
+        int last = tour[(pos[first] + length - 1) % n];
+        int p = prev(first);
+        int nx = next(last);
+        // p first..last nx .. after v  ->  p after .. nx last..first v
+        reversePath(p, first, after);
+        // ->  p nx .. after last..first v
+        reversePath(p, after, nx);
+        // ->  p nx .. after first..last v
+        if (!reversed) reversePath(after, last, first);
+    }
+
+    /**
+     * Reverses the path of the tour from x to y, where outside is the neighbour of x that is not on the path. The
+     * array may run either way after earlier reversals, so the direction is read from outside.
+     */
+    private void reversePath(int outside, int x, int y) {
+        if (next(outside) == x) {
+            reverse(pos[x], pos[y]);
+        } else {
+            reverse(pos[y], pos[x]);
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.inaoe.rna.utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Distance matrix read from a binary file through memory mapping, so the operating system pages the distances in
+ * on demand and nothing of the matrix lives on the heap.
+ * <p>
+ * The file is a 16 byte header (the magic "TSPD", a format version, n and the bytes per value, 4 or 8) followed by
+ * the strict upper triangle row by row in little-endian order, the same layout as {@link PackedDistanceMatrix}.
+ * Files larger than 2 GB are mapped as several segments.
+ */
+public class MappedDistanceMatrix implements DistanceMatrix {
+
+    private static final int MAGIC = 0x44505354;
+    private static final int VERSION = 1;
+    private static final int HEADER = 16;
+    private static final int SEGMENT_BITS = 30;
+    private static final long SEGMENT_MASK = (1L << SEGMENT_BITS) - 1;
+
+    private final int n;
+    private final boolean single;
+    private final long[] rowStart;
+    private final MappedByteBuffer[] segments;
+
+    private MappedDistanceMatrix(int n, boolean single, MappedByteBuffer[] segments) {
+        this.n = n;
+        this.single = single;
+        this.segments = segments;
+        this.rowStart = new long[n];
+        for (int x = 0; x < n; x++) {
+            rowStart[x] = (long) x * (2L * n - x - 1) / 2 - x - 1;
+        }
+    }
+
+    /**
+     * Writes the triangle of the given matrix, one row at a time, so the source can itself be lazy. Values are
+     * stored as floats when single is set, which halves the file at the cost of precision. The data goes to a
+     * temporary file that then replaces the target, so matrices still mapping the old file keep working.
+     */
+    public static void write(Path file, DistanceMatrix matrix, boolean single) throws IOException {
+        int n = matrix.size();
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(n).putInt(single ? Float.BYTES : Double.BYTES);
+            for (int x = 0; x < n; x++) {
+                for (int y = x + 1; y < n; y++) {
+                    if (buffer.remaining() < Double.BYTES) {
+                        drain(channel, buffer);
+                    }
+                    double d = matrix.get(x, y);
+                    if (single) buffer.putFloat((float) d);
+                    else buffer.putDouble(d);
+                }
+            }
+            drain(channel, buffer);
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void drain(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    public static MappedDistanceMatrix open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            int[] header = readHeader(channel, file);
+            int n = header[0];
+            int bytes = header[1];
+            long size = channel.size();
+
+            // segments overlap by a value so no read ever straddles two of them
+            int count = (int) ((size - 1) >>> SEGMENT_BITS) + 1;
+            MappedByteBuffer[] segments = new MappedByteBuffer[count];
+            for (int s = 0; s < count; s++) {
+                long start = (long) s << SEGMENT_BITS;
+                long length = Math.min(size - start, (1L << SEGMENT_BITS) + bytes);
+                segments[s] = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+                segments[s].order(ByteOrder.LITTLE_ENDIAN);
+            }
+            return new MappedDistanceMatrix(n, bytes == Float.BYTES, segments);
+        }
+    }
+
+    /**
+     * Opens the file when it already holds a matrix of the right size and precision, otherwise writes it from the
+     * source first. The header is checked before anything is mapped, so a stale file can still be replaced.
+     */
+    public static MappedDistanceMatrix openOrCreate(Path file, DistanceMatrix source, boolean single)
+            throws IOException {
+        boolean usable = false;
+        if (Files.exists(file)) {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                int[] header = readHeader(channel, file);
+                usable = header[0] == source.size() && header[1] == (single ? Float.BYTES : Double.BYTES);
+            } catch (IOException e) {
+                // stale or foreign file, rewritten below
+            }
+        }
+        if (!usable) {
+            write(file, source, single);
+        }
+        return open(file);
+    }
+
+    /**
+     * Validates the header and the file length, returns {n, bytes per value}.
+     */
+    private static int[] readHeader(FileChannel channel, Path file) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER).order(ByteOrder.LITTLE_ENDIAN);
+        while (header.hasRemaining() && channel.read(header) >= 0) ;
+        header.flip();
+        if (header.remaining() < HEADER || header.getInt() != MAGIC || header.getInt() != VERSION) {
+            throw new IOException(file + " is not a distance matrix file");
+        }
+        int n = header.getInt();
+        int bytes = header.getInt();
+        long expected = HEADER + (long) n * (n - 1) / 2 * bytes;
+        if ((bytes != Float.BYTES && bytes != Double.BYTES) || channel.size() != expected) {
+            throw new IOException(String.format("%s should hold %d bytes for %d cities, it has %d",
+                    file, expected, n, channel.size()));
+        }
+        return new int[]{n, bytes};
+    }
+
+    @Override
+    public int size() {
+        return n;
+    }
+
+    @Override
+    public double get(int x, int y) {
+        if (x == y) return 0;
+        long index = x < y ? rowStart[x] + y : rowStart[y] + x;
+        long position = HEADER + (index << (single ? 2 : 3));
+        MappedByteBuffer segment = segments[(int) (position >>> SEGMENT_BITS)];
+        int offset = (int) (position & SEGMENT_MASK);
+        return single ? segment.getFloat(offset) : segment.getDouble(offset);
+    }
+}
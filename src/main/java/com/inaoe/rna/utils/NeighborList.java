@@ -0,0 +1,162 @@
+package com.inaoe.rna.utils;
+
+import lombok.Getter;
+
+import java.util.stream.IntStream;
+
+/**
+ * Candidate cities of every city, stored in compressed sparse row form: the candidates of city x are
+ * neighbors[offsets[x]] .. neighbors[offsets[x + 1] - 1], closest first, with their distances in weights.
+ * <p>
+ * The lists are symmetric: y is a candidate of x exactly when x is one of y's. Every city keeps its k nearest
+ * cities plus the cities that have it among their k nearest, so the sparse distance term stays the gradient of the
+ * sparse energy.
+ */
+@Getter
+public class NeighborList {
+
+    private final int n;
+    private final int[] offsets;
+    private final int[] neighbors;
+    private final double[] weights;
+
+    private NeighborList(int n, int[] offsets, int[] neighbors, double[] weights) {
+        this.n = n;
+        this.offsets = offsets;
+        this.neighbors = neighbors;
+        this.weights = weights;
+    }
+
+    /**
+     * Selects the k nearest cities of every city with a bounded max-heap, in O(n^2 log k), and adds the reverse
+     * edges.
+     */
+    public static NeighborList build(DistanceMatrix D, int k) {
+        int n = D.size();
+        int size = Math.max(0, Math.min(k, n - 1));
+        int[] nearest = new int[n * size];
+        double[] distances = new double[n * size];
+        IntStream.range(0, n).parallel().forEach(x -> selectNearest(D, x, size, nearest, distances));
+
+        // x gets y back when y chose x but x did not choose y, which cannot happen when every city chose all others
+        boolean complete = size == n - 1;
+        int[] degree = new int[n + 1];
+        for (int y = 0; y < n; y++) {
+            degree[y] += size;
+            for (int e = y * size; e < (y + 1) * size; e++) {
+                int x = nearest[e];
+                if (!complete && !contains(nearest, x * size, size, y)) degree[x]++;
+            }
+        }
+        int[] offsets = new int[n + 1];
+        for (int x = 0; x < n; x++) {
+            offsets[x + 1] = offsets[x] + degree[x];
+        }
+        int[] neighbors = new int[offsets[n]];
+        double[] weights = new double[offsets[n]];
+        int[] fill = new int[n];
+        for (int x = 0; x < n; x++) {
+            System.arraycopy(nearest, x * size, neighbors, offsets[x], size);
+            System.arraycopy(distances, x * size, weights, offsets[x], size);
+            fill[x] = offsets[x] + size;
+        }
+        for (int y = 0; y < n; y++) {
+            for (int e = y * size; e < (y + 1) * size; e++) {
+                int x = nearest[e];
+                if (!complete && !contains(nearest, x * size, size, y)) {
+                    neighbors[fill[x]] = y;
+                    weights[fill[x]] = distances[e];
+                    fill[x]++;
+                }
+            }
+        }
+        // the own k nearest are sorted already, so this only moves the few reverse edges into place
+        IntStream.range(0, n).parallel().forEach(x -> insertionSort(neighbors, weights, offsets[x], offsets[x + 1]));
+        return new NeighborList(n, offsets, neighbors, weights);
+    }
+
+    public int degree(int x) {
+        return offsets[x + 1] - offsets[x];
+    }
+
+    /**
+     * Writes the size nearest cities of x, closest first, to nearest[x * size ..] and their distances to distances.
+     * Ties are broken by the lower index, so the lists do not depend on the scan order.
+     */
+    private static void selectNearest(DistanceMatrix D, int x, int size, int[] nearest, double[] distances) {
+        if (size == 0) return;
+        int[] heap = new int[size];
+        double[] keys = new double[size];
+        int count = 0;
+        for (int y = 0; y < D.size(); y++) {
+            if (y == x) continue;
+            double d = D.get(x, y);
+            if (count < size) {
+                // sift up
+                int i = count++;
+                while (i > 0) {
+                    int parent = (i - 1) / 2;
+                    if (!before(keys[parent], heap[parent], d, y)) break;
+                    heap[i] = heap[parent];
+                    keys[i] = keys[parent];
+                    i = parent;
+                }
+                heap[i] = y;
+                keys[i] = d;
+            } else if (before(d, y, keys[0], heap[0])) {
+                siftDown(heap, keys, size, y, d);
+            }
+        }
+        // popping the maximum fills the row from the back
+        int base = x * size;
+        for (int last = size - 1; last >= 0; last--) {
+            nearest[base + last] = heap[0];
+            distances[base + last] = keys[0];
+            if (last > 0) siftDown(heap, keys, last, heap[last], keys[last]);
+        }
+    }
+
+    /**
+     * Places (city, key) at the root of the max-heap of the given size and sifts it down.
+     */
+    private static void siftDown(int[] heap, double[] keys, int size, int city, double key) {
+        int i = 0;
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size) break;
+            if (child + 1 < size && before(keys[child], heap[child], keys[child + 1], heap[child + 1])) child++;
+            if (!before(key, city, keys[child], heap[child])) break;
+            heap[i] = heap[child];
+            keys[i] = keys[child];
+            i = child;
+        }
+        heap[i] = city;
+        keys[i] = key;
+    }
+
+    private static boolean before(double d1, int city1, double d2, int city2) {
+        return d1 < d2 || (d1 == d2 && city1 < city2);
+    }
+
+    private static boolean contains(int[] cities, int from, int size, int city) {
+        for (int e = from; e < from + size; e++) {
+            if (cities[e] == city) return true;
+        }
+        return false;
+    }
+
+    private static void insertionSort(int[] cities, double[] weights, int from, int to) {
+        for (int i = from + 1; i < to; i++) {
+            int city = cities[i];
+            double weight = weights[i];
+            int j = i - 1;
+            while (j >= from && before(weight, city, weights[j], cities[j])) {
+                cities[j + 1] = cities[j];
+                weights[j + 1] = weights[j];
+                j--;
+            }
+            cities[j + 1] = city;
+            weights[j + 1] = weight;
+        }
+    }
+}
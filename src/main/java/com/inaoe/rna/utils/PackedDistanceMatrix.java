@@ -0,0 +1,118 @@
+package com.inaoe.rna.utils;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Distance matrix that keeps only the strict upper triangle, row by row, in one flat array: about half the memory
+ * of a full n x n matrix. The pair (x, y) with x < y lives at rowStart[x] + y.
+ */
+public class PackedDistanceMatrix implements DistanceMatrix {
+
+    private final int n;
+    private final int[] rowStart;
+    private final double[] values;
+
+    PackedDistanceMatrix(int n) {
+        this(n, new double[entries(n)]);
+    }
+
+    /**
+     * Wraps an existing triangle of n * (n - 1) / 2 values.
+     */
+    PackedDistanceMatrix(int n, double[] values) {
+        if (values.length != entries(n)) {
+            throw new IllegalArgumentException(String.format(
+                    "%d cities need %d packed values, got %d", n, entries(n), values.length));
+        }
+        this.n = n;
+        this.rowStart = new int[n];
+        for (int x = 0; x < n; x++) {
+            rowStart[x] = (int) ((long) x * (2 * n - x - 1) / 2 - x - 1);
+        }
+        this.values = values;
+    }
+
+    static int entries(int n) {
+        long size = (long) n * (n - 1) / 2;
+        if (size > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException(String.format(
+                    "A packed matrix of %d cities has %,d entries, more than an array can hold", n, size));
+        }
+        return (int) size;
+    }
+
+    /**
+     * Euclidean distances between the given coordinates, one row of the triangle per task.
+     */
+    public static PackedDistanceMatrix euclidean(List<double[]> nodes) {
+        int n = nodes.size();
+        PackedDistanceMatrix matrix = new PackedDistanceMatrix(n);
+        double[][] coords = nodes.toArray(new double[0][]);
+        IntStream.range(0, n).parallel().forEach(x -> {
+            double[] a = coords[x];
+            int offset = matrix.rowStart[x];
+            for (int y = x + 1; y < n; y++) {
+                double[] b = coords[y];
+                double sum = 0;
+                for (int k = 0; k < a.length; k++) {
+                    double diff = a[k] - b[k];
+                    sum += diff * diff;
+                }
+                matrix.values[offset + y] = Math.sqrt(sum);
+            }
+        });
+        return matrix;
+    }
+
+    /**
+     * Packs the upper triangle of a full symmetric matrix.
+     */
+    public static PackedDistanceMatrix of(double[][] D) {
+        int n = D.length;
+        PackedDistanceMatrix matrix = new PackedDistanceMatrix(n);
+        for (int x = 0; x < n; x++) {
+            System.arraycopy(D[x], x + 1, matrix.values, matrix.rowStart[x] + x + 1, n - x - 1);
+        }
+        return matrix;
+    }
+
+    /**
+     * Packs any distance matrix, for example a lazy one, one row of the triangle per task.
+     */
+    public static PackedDistanceMatrix of(DistanceMatrix source) {
+        int n = source.size();
+        PackedDistanceMatrix matrix = new PackedDistanceMatrix(n);
+        IntStream.range(0, n).parallel().forEach(x -> {
+            int offset = matrix.rowStart[x];
+            for (int y = x + 1; y < n; y++) {
+                matrix.values[offset + y] = source.get(x, y);
+            }
+        });
+        return matrix;
+    }
+
+    void set(int x, int y, double d) {
+        if (x < y) values[rowStart[x] + y] = d;
+        else if (x > y) values[rowStart[y] + x] = d;
+    }
+
+    /**
+     * The packed triangle itself, not a copy.
+     */
+    double[] values() {
+        return values;
+    }
+
+    @Override
+    public int size() {
+        return n;
+    }
+
+    @Override
+    public double get(int x, int y) {
+        if (x < y) return values[rowStart[x] + y];
+        if (x > y) return values[rowStart[y] + x];
+        return 0;
+    }
+}
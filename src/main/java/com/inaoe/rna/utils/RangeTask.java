@@ -0,0 +1,46 @@
+package com.inaoe.rna.utils;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Splits the index range [from, to) in halves until a piece holds at most grain indices and runs the action on every
+ * piece, so the work is spread over exactly the pool it is invoked in.
+ */
+class RangeTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    interface RangeAction {
+        void apply(int from, int to);
+    }
+
+    private final RangeAction action;
+    private final int from;
+    private final int to;
+    private final int grain;
+
+    private RangeTask(RangeAction action, int from, int to, int grain) {
+        this.action = action;
+        this.from = from;
+        this.to = to;
+        this.grain = grain;
+    }
+
+    /**
+     * Runs the action over [0, length) in the given pool, in about four pieces per thread, and waits for it.
+     */
+    static void run(ForkJoinPool pool, int length, RangeAction action) {
+        int grain = Math.max(1, length / (pool.getParallelism() * 4));
+        pool.invoke(new RangeTask(action, 0, length, grain));
+    }
+
+    @Override
+    protected void compute() {
+        if (to - from <= grain) {
+            action.apply(from, to);
+        } else {
+            int mid = (from + to) >>> 1;
+            invokeAll(new RangeTask(action, from, mid, grain), new RangeTask(action, mid, to, grain));
+        }
+    }
+}
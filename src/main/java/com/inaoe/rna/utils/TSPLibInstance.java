@@ -0,0 +1,94 @@
+package com.inaoe.rna.utils;
+
+import lombok.Getter;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A symmetric TSP instance as read by {@link TSPLibReader}: either coordinates with the rule that turns them into
+ * distances, or an explicit packed distance triangle, or both when the file also carries display coordinates.
+ */
+@Getter
+public class TSPLibInstance {
+
+    private final String name;
+    private final EdgeWeightType edgeWeightType;
+    private final int dimension;
+    // x and y of city i at 2 * i and 2 * i + 1, null when the file has no coordinates
+    private final double[] coordinates;
+    // upper triangle of an EXPLICIT instance, null otherwise
+    private final PackedDistanceMatrix weights;
+
+    TSPLibInstance(String name, EdgeWeightType edgeWeightType, int dimension, double[] coordinates,
+                   PackedDistanceMatrix weights) {
+        this.name = name;
+        this.edgeWeightType = edgeWeightType;
+        this.dimension = dimension;
+        this.coordinates = coordinates;
+        this.weights = weights;
+    }
+
+    public boolean hasCoordinates() {
+        return coordinates != null;
+    }
+
+    /**
+     * Coordinates as the list of {x, y} pairs the rest of the code works with.
+     */
+    public List<double[]> getNodes() {
+        if (coordinates == null) {
+            throw new IllegalStateException(name + " only lists distances, it has no coordinates");
+        }
+        List<double[]> nodes = new ArrayList<>(dimension);
+        for (int i = 0; i < dimension; i++) {
+            nodes.add(new double[]{coordinates[2 * i], coordinates[2 * i + 1]});
+        }
+        return nodes;
+    }
+
+    /**
+     * Distances under the instance's edge weight type: the explicit triangle, or one packed from the coordinates
+     * while it takes at most a quarter of the heap, or else {@link #getLazyDistances()}.
+     */
+    public DistanceMatrix getDistances() {
+        if (edgeWeightType == EdgeWeightType.EXPLICIT) {
+            return weights;
+        }
+        if (!fitsInHeap()) {
+            return getLazyDistances();
+        }
+        return PackedDistanceMatrix.of(getLazyDistances());
+    }
+
+    /**
+     * Same as {@link #getDistances()}, except that a matrix too large for the heap is computed once into
+     * {@code <directory>/<name>.dist} and memory mapped from there by {@link MappedDistanceMatrix}, instead of being
+     * recomputed from the coordinates on every read. The file is reused by later calls.
+     */
+    public DistanceMatrix getDistances(Path directory) throws IOException {
+        if (edgeWeightType == EdgeWeightType.EXPLICIT || fitsInHeap()) {
+            return getDistances();
+        }
+        Files.createDirectories(directory);
+        return MappedDistanceMatrix.openOrCreate(directory.resolve(name + ".dist"), getLazyDistances(), false);
+    }
+
+    private boolean fitsInHeap() {
+        long bytes = (long) dimension * (dimension - 1) / 2 * Double.BYTES;
+        return bytes <= Runtime.getRuntime().maxMemory() / 4 && bytes / Double.BYTES <= Integer.MAX_VALUE - 8;
+    }
+
+    /**
+     * Distances computed from the coordinates on every call, in O(n) memory.
+     */
+    public DistanceMatrix getLazyDistances() {
+        if (edgeWeightType == EdgeWeightType.EXPLICIT) {
+            return weights;
+        }
+        return new CoordinateDistanceMatrix(coordinates, 2, edgeWeightType);
+    }
+}
@@ -0,0 +1,452 @@
+package com.inaoe.rna.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Reads symmetric TSPLIB files: the NAME, TYPE, DIMENSION, EDGE_WEIGHT_TYPE and EDGE_WEIGHT_FORMAT keywords, node
+ * coordinates, display data and explicit matrices in the row and column formats. Files without a header, an
+ * optional city count followed by "id x y" lines, are read as plain Euclidean instances.
+ * <p>
+ * The data sections go through a hand-written scanner over a byte buffer that allocates nothing per line. When a
+ * cache directory is set, parsed instances are also stored there in a binary cache, keyed by the file's path, size
+ * and modification time, which later reads load with a single bulk transfer.
+ */
+public class TSPLibReader {
+
+    private static final int CACHE_MAGIC = 0x43505354;
+    private static final int CACHE_VERSION = 1;
+
+    private Path cacheDirectory;
+
+    /**
+     * Where parsed instances are cached, null (the default) turns the cache off.
+     */
+    public void setCacheDirectory(Path cacheDirectory) {
+        this.cacheDirectory = cacheDirectory;
+    }
+
+    public TSPLibInstance read(Path file) throws IOException {
+        Path cache = cacheFile(file);
+        if (cache != null) {
+            TSPLibInstance cached = readCache(cache, file);
+            if (cached != null) return cached;
+        }
+        TSPLibInstance instance = parse(file);
+        if (cache != null) {
+            try {
+                writeCache(cache, file, instance);
+            } catch (IOException e) {
+                // the cache is only an optimisation, a read-only location just means parsing every time
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Parses the file without looking at the cache.
+     */
+    public TSPLibInstance parse(Path file) throws IOException {
+        String name = file.getFileName().toString().replaceFirst("\\.[^.]*$", "");
+        try (Scanner in = new Scanner(Files.newInputStream(file))) {
+            if (in.atNumber()) {
+                return parseHeaderless(in, name);
+            }
+            EdgeWeightType type = null;
+            String format = "FULL_MATRIX";
+            int n = -1;
+            double[] coordinates = null;
+            double[] display = null;
+            PackedDistanceMatrix weights = null;
+            for (String key; (key = in.keyword()) != null && !key.equals("EOF"); ) {
+                switch (key) {
+                    case "NAME":
+                        name = in.value();
+                        break;
+                    case "TYPE":
+                        String problem = in.value();
+                        if (!problem.equals("TSP")) {
+                            throw new IOException(file + ": only symmetric TSP files are supported, not " + problem);
+                        }
+                        break;
+                    case "DIMENSION":
+                        n = Integer.parseInt(in.value());
+                        break;
+                    case "EDGE_WEIGHT_TYPE":
+                        String value = in.value();
+                        try {
+                            type = EdgeWeightType.valueOf(value);
+                        } catch (IllegalArgumentException e) {
+                            throw new IOException(file + ": unsupported EDGE_WEIGHT_TYPE " + value);
+                        }
+                        break;
+                    case "EDGE_WEIGHT_FORMAT":
+                        format = in.value();
+                        break;
+                    case "NODE_COORD_SECTION":
+                        coordinates = readCoordinates(in, n, file);
+                        break;
+                    case "DISPLAY_DATA_SECTION":
+                        display = readCoordinates(in, n, file);
+                        break;
+                    case "EDGE_WEIGHT_SECTION":
+                        weights = readWeights(in, n, format, file);
+                        break;
+                    default:
+                        // COMMENT, NODE_COORD_TYPE, DISPLAY_DATA_TYPE and anything else informative
+                        in.value();
+                }
+            }
+            if (type == null) {
+                throw new IOException(file + ": missing EDGE_WEIGHT_TYPE");
+            }
+            if (type == EdgeWeightType.EXPLICIT ? weights == null : coordinates == null) {
+                throw new IOException(file + ": missing the section with the " + type + " data");
+            }
+            return new TSPLibInstance(name, type, n, coordinates != null ? coordinates : display, weights);
+        }
+    }
+
+    private TSPLibInstance parseHeaderless(Scanner in, String name) throws IOException {
+        // the first line is either the city count alone or already the first city
+        double first = in.number();
+        int n = -1;
+        double[] coordinates = new double[64];
+        int size = 0;
+        if (in.moreOnLine()) {
+            coordinates[size++] = in.number();
+            coordinates[size++] = in.number();
+        } else {
+            n = (int) first;
+            coordinates = new double[2 * n];
+        }
+        while (in.skipWhitespace() >= 0) {
+            in.number();
+            if (size + 2 > coordinates.length) coordinates = Arrays.copyOf(coordinates, 2 * coordinates.length);
+            coordinates[size++] = in.number();
+            coordinates[size++] = in.number();
+        }
+        if (n >= 0 && size != 2 * n) {
+            throw new IOException(String.format("%s: announces %d cities but lists %d", name, n, size / 2));
+        }
+        return new TSPLibInstance(name, EdgeWeightType.EUCLIDEAN, size / 2, Arrays.copyOf(coordinates, size), null);
+    }
+
+    private double[] readCoordinates(Scanner in, int n, Path file) throws IOException {
+        requireDimension(n, file);
+        double[] coordinates = new double[2 * n];
+        for (int i = 0; i < n; i++) {
+            in.number();
+            coordinates[2 * i] = in.number();
+            coordinates[2 * i + 1] = in.number();
+        }
+        return coordinates;
+    }
+
+    private PackedDistanceMatrix readWeights(Scanner in, int n, String format, Path file) throws IOException {
+        requireDimension(n, file);
+        PackedDistanceMatrix weights = new PackedDistanceMatrix(n);
+        // for a symmetric matrix every column format equals the opposite row format
+        switch (format) {
+            case "FULL_MATRIX":
+                for (int x = 0; x < n; x++) {
+                    for (int y = 0; y < n; y++) {
+                        weights.set(x, y, in.number());
+                    }
+                }
+                break;
+            case "UPPER_ROW":
+            case "LOWER_COL":
+                for (int x = 0; x < n; x++) {
+                    for (int y = x + 1; y < n; y++) {
+                        weights.set(x, y, in.number());
+                    }
+                }
+                break;
+            case "LOWER_ROW":
+            case "UPPER_COL":
+                for (int x = 0; x < n; x++) {
+                    for (int y = 0; y < x; y++) {
+                        weights.set(x, y, in.number());
+                    }
+                }
+                break;
+            case "UPPER_DIAG_ROW":
+            case "LOWER_DIAG_COL":
+                for (int x = 0; x < n; x++) {
+                    for (int y = x; y < n; y++) {
+                        weights.set(x, y, in.number());
+                    }
+                }
+                break;
+            case "LOWER_DIAG_ROW":
+            case "UPPER_DIAG_COL":
+                for (int x = 0; x < n; x++) {
+                    for (int y = 0; y <= x; y++) {
+                        weights.set(x, y, in.number());
+                    }
+                }
+                break;
+            default:
+                throw new IOException(file + ": unsupported EDGE_WEIGHT_FORMAT " + format);
+        }
+        return weights;
+    }
+
+    private void requireDimension(int n, Path file) throws IOException {
+        if (n < 0) {
+            throw new IOException(file + ": DIMENSION must come before the data sections");
+        }
+    }
+
+    private Path cacheFile(Path file) {
+        if (cacheDirectory == null) return null;
+        String key = Integer.toHexString(file.toAbsolutePath().normalize().toString().hashCode());
+        return cacheDirectory.resolve(file.getFileName() + "-" + key + ".bin");
+    }
+
+    /**
+     * Loads the cached instance, or returns null when there is none or it is older than the file.
+     */
+    private TSPLibInstance readCache(Path cache, Path file) {
+        try (FileChannel channel = FileChannel.open(cache, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) ;
+            buffer.flip();
+            if (buffer.getInt() != CACHE_MAGIC || buffer.getInt() != CACHE_VERSION
+                    || buffer.getLong() != Files.size(file)
+                    || buffer.getLong() != Files.getLastModifiedTime(file).toMillis()) {
+                return null;
+            }
+            EdgeWeightType type = EdgeWeightType.values()[buffer.getInt()];
+            int n = buffer.getInt();
+            byte[] name = new byte[buffer.getInt()];
+            buffer.get(name);
+            double[] coordinates = null;
+            if (buffer.get() != 0) {
+                coordinates = new double[2 * n];
+                buffer.asDoubleBuffer().get(coordinates);
+                buffer.position(buffer.position() + coordinates.length * Double.BYTES);
+            }
+            PackedDistanceMatrix weights = null;
+            if (buffer.get() != 0) {
+                double[] values = new double[PackedDistanceMatrix.entries(n)];
+                buffer.asDoubleBuffer().get(values);
+                weights = new PackedDistanceMatrix(n, values);
+            }
+            return new TSPLibInstance(new String(name, StandardCharsets.UTF_8), type, n, coordinates, weights);
+        } catch (IOException | RuntimeException e) {
+            // missing, truncated or from another version
+            return null;
+        }
+    }
+
+    private void writeCache(Path cache, Path file, TSPLibInstance instance) throws IOException {
+        byte[] name = instance.getName().getBytes(StandardCharsets.UTF_8);
+        double[] coordinates = instance.getCoordinates();
+        double[] weights = instance.getWeights() == null ? null : instance.getWeights().values();
+        long size = 36L + name.length + 2
+                + (coordinates == null ? 0 : (long) coordinates.length * Double.BYTES)
+                + (weights == null ? 0 : (long) weights.length * Double.BYTES);
+        if (size > Integer.MAX_VALUE - 8) return;
+
+        ByteBuffer buffer = ByteBuffer.allocate((int) size);
+        buffer.putInt(CACHE_MAGIC).putInt(CACHE_VERSION)
+                .putLong(Files.size(file)).putLong(Files.getLastModifiedTime(file).toMillis())
+                .putInt(instance.getEdgeWeightType().ordinal()).putInt(instance.getDimension())
+                .putInt(name.length).put(name);
+        buffer.put((byte) (coordinates == null ? 0 : 1));
+        if (coordinates != null) {
+            buffer.asDoubleBuffer().put(coordinates);
+            buffer.position(buffer.position() + coordinates.length * Double.BYTES);
+        }
+        buffer.put((byte) (weights == null ? 0 : 1));
+        if (weights != null) {
+            buffer.asDoubleBuffer().put(weights);
+        }
+        buffer.position(0);
+
+        Files.createDirectories(cacheDirectory);
+        Path temporary = cache.resolveSibling(cache.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+        Files.move(temporary, cache, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Byte-level tokenizer: keywords and values of the header become strings, numbers are parsed straight from the
+     * buffer.
+     */
+    private static class Scanner implements AutoCloseable {
+
+        private static final double[] POWERS = new double[23];
+
+        static {
+            POWERS[0] = 1;
+            for (int i = 1; i < POWERS.length; i++) POWERS[i] = POWERS[i - 1] * 10;
+        }
+
+        private final InputStream in;
+        private final byte[] buffer = new byte[1 << 16];
+        private final StringBuilder text = new StringBuilder();
+        private int position;
+        private int limit;
+        private int line = 1;
+
+        Scanner(InputStream in) {
+            this.in = in;
+        }
+
+        private int peek() throws IOException {
+            if (position == limit) {
+                limit = in.read(buffer, 0, buffer.length);
+                position = 0;
+                if (limit <= 0) {
+                    limit = 0;
+                    return -1;
+                }
+            }
+            return buffer[position] & 0xff;
+        }
+
+        private int read() throws IOException {
+            int c = peek();
+            if (c >= 0) {
+                position++;
+                if (c == '\n') line++;
+            }
+            return c;
+        }
+
+        /**
+         * Skips spaces and line breaks, returns the next character or -1 at the end of the file.
+         */
+        int skipWhitespace() throws IOException {
+            int c;
+            while ((c = peek()) >= 0 && c <= ' ') read();
+            return c;
+        }
+
+        boolean atNumber() throws IOException {
+            int c = skipWhitespace();
+            return c == '-' || c == '+' || c == '.' || (c >= '0' && c <= '9');
+        }
+
+        /**
+         * Whether something other than spaces follows on the current line.
+         */
+        boolean moreOnLine() throws IOException {
+            int c;
+            while ((c = peek()) == ' ' || c == '\t' || c == '\r') read();
+            return c >= 0 && c != '\n';
+        }
+
+        /**
+         * Next keyword, up to a colon or whitespace, or null at the end of the file.
+         */
+        String keyword() throws IOException {
+            int c = skipWhitespace();
+            if (c < 0) return null;
+            text.setLength(0);
+            while ((c = peek()) > ' ' && c != ':') {
+                text.append((char) read());
+            }
+            return text.toString();
+        }
+
+        /**
+         * Rest of the line after an optional colon, trimmed.
+         */
+        String value() throws IOException {
+            int c;
+            while ((c = peek()) == ' ' || c == '\t' || c == ':') read();
+            text.setLength(0);
+            while ((c = read()) >= 0 && c != '\n') {
+                text.append((char) c);
+            }
+            return text.toString().trim();
+        }
+
+        /**
+         * Parses a decimal number with optional sign, fraction and exponent. Up to 18 significant digits are kept,
+         * and the result is exact for the usual coordinates with a handful of decimals.
+         */
+        double number() throws IOException {
+            int c = skipWhitespace();
+            boolean negative = c == '-';
+            if (c == '-' || c == '+') {
+                read();
+                c = peek();
+            }
+            long mantissa = 0;
+            int significant = 0;
+            int exponent = 0;
+            boolean digits = false;
+            for (; c >= '0' && c <= '9'; c = peek()) {
+                read();
+                digits = true;
+                if (significant < 18) {
+                    mantissa = mantissa * 10 + (c - '0');
+                    if (mantissa != 0) significant++;
+                } else {
+                    exponent++;
+                }
+            }
+            if (c == '.') {
+                read();
+                for (c = peek(); c >= '0' && c <= '9'; c = peek()) {
+                    read();
+                    digits = true;
+                    if (significant < 18) {
+                        mantissa = mantissa * 10 + (c - '0');
+                        if (mantissa != 0) significant++;
+                        exponent--;
+                    }
+                }
+            }
+            if (!digits) {
+                throw new IOException(String.format("Expected a number on line %d, found %s", line,
+                        c < 0 ? "the end of the file" : "'" + (char) c + "'"));
+            }
+            if (c == 'e' || c == 'E') {
+                read();
+                c = peek();
+                boolean negativeExponent = c == '-';
+                if (c == '-' || c == '+') {
+                    read();
+                    c = peek();
+                }
+                int value = 0;
+                for (; c >= '0' && c <= '9'; c = peek()) {
+                    read();
+                    value = Math.min(value * 10 + (c - '0'), 1000);
+                }
+                exponent += negativeExponent ? -value : value;
+            }
+            double result = mantissa;
+            if (exponent < 0) {
+                result = -exponent < POWERS.length ? result / POWERS[-exponent] : result / Math.pow(10, -exponent);
+            } else if (exponent > 0) {
+                result = exponent < POWERS.length ? result * POWERS[exponent] : result * Math.pow(10, exponent);
+            }
+            return negative ? -result : result;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
@@ -1,77 +1,75 @@
 package com.inaoe.rna.utils;
 
-import org.apache.commons.math3.ml.distance.EuclideanDistance;
 import org.apache.commons.math3.random.RandomDataGenerator;
-import org.apache.commons.math3.util.Precision;
-import org.jgrapht.Graphs;
-import org.jgrapht.alg.tour.HeldKarpTSP;
-import org.jgrapht.graph.DefaultWeightedEdge;
-import org.jgrapht.graph.builder.GraphTypeBuilder;
-
-import java.io.BufferedReader;
-import java.io.FileReader;
+
 import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntFunction;
+import java.util.function.ToDoubleFunction;
+import java.util.stream.IntStream;
 
 public class TSPUtils {
     public static List<double[]> generateInstance(int n) {
+        return generateInstance(n, new Random());
+    }
+
+    public static List<double[]> generateInstance(int n, long seed) {
+        return generateInstance(n, new Random(seed));
+    }
+
+    private static List<double[]> generateInstance(int n, Random rnd) {
 
         List<double[]> nodes = new ArrayList<>(n);
-        var rnd = new Random();
         for (int i = 0; i < n; i++) {
             nodes.add(rnd.doubles(2).toArray());
         }
         return nodes;
     }
 
-    public static double[][] getAdjacencyMatrix(List<double[]> nodes) {
-        double[][] adjacencyMatrix = new double[nodes.size()][nodes.size()];
-        var eucDistance = new EuclideanDistance();
+    private static List<double[]> cachedNodes;
+    private static DistanceMatrix cachedMatrix;
 
-        for (int i = 0; i < nodes.size(); i++) {
-            for (int j = 0; j < nodes.size(); j++) {
-                if (i != j) {
-                    adjacencyMatrix[i][j] = eucDistance.compute(nodes.get(i), nodes.get(j));
-                }
-            }
-        }
-        return adjacencyMatrix;
+    public static DistanceMatrix getAdjacencyMatrix(List<double[]> nodes) {
+        return PackedDistanceMatrix.euclidean(nodes);
     }
 
-    public static boolean verifyStability(double[][] arr1, double[][] arr2) {
-        int n = arr1.length;
-        int zerosCount = 0;
-
-        double epsilon = 1e-15;
-        for (int i = 0; i < n; i++) {
-            for (int j = 0; j < n; j++) {
-                if (Precision.equals(0, arr1[i][j], epsilon)) zerosCount++;
-
-                if (!Precision.equals(arr1[i][j], arr2[i][j], epsilon)) {
-                    return false;
-                }
-            }
+    /**
+     * Distance matrix of the given instance, built once and reused while the same list is passed in.
+     */
+    public static synchronized DistanceMatrix getDistanceMatrix(List<double[]> nodes) {
+        if (nodes != cachedNodes) {
+            cachedMatrix = getAdjacencyMatrix(nodes);
+            cachedNodes = nodes;
         }
-        return zerosCount != n * n;
+        return cachedMatrix;
+    }
+
+    public static synchronized void invalidateDistanceMatrix() {
+        cachedNodes = null;
+        cachedMatrix = null;
     }
 
-    public static double fitnessFunction(double[][] D, int[] tour) {
+    public static double fitnessFunction(DistanceMatrix D, int[] tour) {
         int n = tour.length;
         double fitnessValue = 0;
         for (int i = 0; i < n - 1; i++) {
-            fitnessValue += D[tour[i]][tour[i + 1]];
+            fitnessValue += D.get(tour[i], tour[i + 1]);
         }
-        fitnessValue += D[tour[n - 1]][tour[0]];
+        fitnessValue += D.get(tour[n - 1], tour[0]);
         return fitnessValue;
     }
 
-    public static int[] nearestNeighbor(double[][] D) {
-        int n = D.length;
+    public static int[] nearestNeighbor(DistanceMatrix D) {
+        return nearestNeighbor(D, new Random().nextInt(D.size()));
+    }
+
+    public static int[] nearestNeighbor(DistanceMatrix D, int depot) {
+        int n = D.size();
 
-        int depot = new Random().nextInt(n);
         int[] tour = new int[n];
         tour[0] = depot;
         int[] repetitions = new int[n];
@@ -82,9 +80,9 @@ public class TSPUtils {
             double minD = Double.POSITIVE_INFINITY;
             for (int j = 0; j < n; j++) {
                 if (tour[i - 1] != j) {
-                    if (minD > D[tour[i - 1]][j] && repetitions[j] == 0) {
+                    if (minD > D.get(tour[i - 1], j) && repetitions[j] == 0) {
                         nextCity = j;
-                        minD = D[tour[i - 1]][j];
+                        minD = D.get(tour[i - 1], j);
                     }
                 }
             }
@@ -94,57 +92,120 @@ public class TSPUtils {
         return tour;
     }
 
-    public static int[] solveExact(double[][] D) {
+    /**
+     * Nearest neighbour tour from the coordinates alone, using a {@link KdTree} instead of a distance matrix row per
+     * step.
+     */
+    public static int[] nearestNeighbor(List<double[]> nodes, int depot) {
+        return nearestNeighbor(new KdTree(nodes), nodes.size(), depot);
+    }
 
-        int n = D.length;
+    private static int[] nearestNeighbor(KdTree tree, int n, int depot) {
+        int[] tour = new int[n];
+        tour[0] = depot;
+        tree.remove(depot);
+        for (int i = 1; i < n; i++) {
+            tour[i] = tree.nearest(tour[i - 1]);
+            tree.remove(tour[i]);
+        }
+        return tour;
+    }
 
-        var tspSolver = new HeldKarpTSP<Integer, DefaultWeightedEdge>();
-        var graph = GraphTypeBuilder
-                .<Integer, DefaultWeightedEdge>undirected().allowingMultipleEdges(false)
-                .allowingSelfLoops(false).edgeClass(DefaultWeightedEdge.class).weighted(true).buildGraph();
+    /**
+     * Best nearest neighbour tour over several depots, all of them when starts >= n or a random sample otherwise,
+     * built in parallel.
+     */
+    public static int[] nearestNeighbor(List<double[]> nodes, int starts, int threads) {
+        KdTree tree = new KdTree(nodes);
+        int n = nodes.size();
+        return bestOfStarts(n, starts, threads, depot -> nearestNeighbor(tree.copy(), n, depot), tour -> {
+            double length = 0;
+            for (int i = 0; i < n; i++) {
+                length += tree.distance(tour[i], tour[(i + 1) % n]);
+            }
+            return length;
+        });
+    }
 
-        // add vertices
-        for (int i = 0; i < n; i++) {
-            graph.addVertex(i);
-        }
+    public static int[] nearestNeighbor(DistanceMatrix D, int starts, int threads) {
+        return bestOfStarts(D.size(), starts, threads, depot -> nearestNeighbor(D, depot),
+                tour -> fitnessFunction(D, tour));
+    }
 
-        // add edges
-        for (int i = 0; i < n; i++) {
-            for (int j = 0; j < n; j++) {
-                if (i != j) {
-                    Graphs.addEdge(graph, i, j, D[i][j]);
+    /**
+     * Builds a tour from every depot and keeps the shortest; ties go to the earlier depot. The depots are split over
+     * a pool of the given size with {@link RangeTask}s, and every piece only hands its own best tour on.
+     */
+    private static int[] bestOfStarts(int n, int starts, int threads, IntFunction<int[]> build,
+                                      ToDoubleFunction<int[]> length) {
+        int[] depots = starts >= n ? IntStream.range(0, n).toArray()
+                : new RandomDataGenerator().nextPermutation(n, Math.max(1, starts));
+        Object[] best = {null, Double.POSITIVE_INFINITY, Integer.MAX_VALUE};
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            RangeTask.run(pool, depots.length, (from, to) -> {
+                int[] pieceTour = null;
+                double pieceLength = Double.POSITIVE_INFINITY;
+                for (int k = from; k < to; k++) {
+                    int[] tour = build.apply(depots[k]);
+                    double l = length.applyAsDouble(tour);
+                    if (pieceTour == null || l < pieceLength) {
+                        pieceTour = tour;
+                        pieceLength = l;
+                    }
                 }
-            }
+                synchronized (best) {
+                    double bestLength = (double) best[1];
+                    if (pieceLength < bestLength || (pieceLength == bestLength && from < (int) best[2])) {
+                        best[0] = pieceTour;
+                        best[1] = pieceLength;
+                        best[2] = from;
+                    }
+                }
+            });
+        } finally {
+            pool.shutdown();
         }
+        return (int[]) best[0];
+    }
 
-        var graphPath = tspSolver.getTour(graph);
-        return Arrays.copyOfRange(graphPath.getVertexList().stream().mapToInt(i -> i).toArray(), 0, n);
+    public static int[] solveExact(DistanceMatrix D) {
+        return new HeldKarpSolver(D).solve();
     }
 
     public static int[] randomTour(int n) {
         return new RandomDataGenerator().nextPermutation(n, n);
     }
 
-    public static List<double[]> readNodes(String fileName) throws IOException {
-
-        List<double[]> nodes = new ArrayList<>();
-
-        BufferedReader reader = new BufferedReader(new FileReader(fileName));
-        String line = reader.readLine();
-        String[] lineArr = line.trim().split("\\s+");
-        if (lineArr.length == 1) {
-            nodes = new ArrayList<>(Integer.parseInt(line));
-        } else {
-            double[] coord = Arrays.stream(Arrays.copyOfRange(lineArr, 1, lineArr.length)).mapToDouble(Double::valueOf).toArray();
-            nodes.add(coord);
+    /**
+     * Uniform random tour drawn from a Random with the given seed, so it can be reproduced.
+     */
+    public static int[] randomTour(int n, long seed) {
+        Random rnd = new Random(seed);
+        int[] tour = new int[n];
+        for (int i = 0; i < n; i++) {
+            int j = rnd.nextInt(i + 1);
+            tour[i] = tour[j];
+            tour[j] = i;
         }
+        return tour;
+    }
 
-        for (; (line = reader.readLine()) != null; ) {
-            lineArr = line.trim().split("\\s+");
-            double[] coord = Arrays.stream(Arrays.copyOfRange(lineArr, 1, lineArr.length)).mapToDouble(Double::valueOf).toArray();
-            nodes.add(coord);
-        }
-        return nodes;
+    /**
+     * Coordinates of a TSPLIB or headerless instance file, see {@link TSPLibReader}. They are only good for drawing:
+     * GEO, ATT and EXPLICIT instances are not weighted by Euclidean distance, so callers that need lengths should
+     * use {@link #readInstance(String)} and its {@link TSPLibInstance#getDistances()} instead of
+     * {@link #getAdjacencyMatrix(List)}.
+     */
+    public static List<double[]> readNodes(String fileName) throws IOException {
+        return readInstance(fileName).getNodes();
+    }
+
+    /**
+     * The instance of a TSPLIB or headerless file, keeping its edge weight type.
+     */
+    public static TSPLibInstance readInstance(String fileName) throws IOException {
+        return new TSPLibReader().read(Paths.get(fileName));
     }
 
     public static List<int[]> normNodes(List<double[]> nodes, double xMin, double xMax, double yMin, double yMax,
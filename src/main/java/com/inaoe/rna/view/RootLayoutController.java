@@ -1,16 +1,19 @@
 
 package com.inaoe.rna.view;
 
-import com.inaoe.rna.Hopfield;
+import com.inaoe.rna.HopfieldNetwork;
+import com.inaoe.rna.HopfieldSnapshot;
+import com.inaoe.rna.StatePrecision;
+import com.inaoe.rna.utils.DistanceMatrix;
 import com.inaoe.rna.utils.TSPUtils;
+import javafx.animation.AnimationTimer;
+import javafx.concurrent.Task;
 import javafx.fxml.FXML;
 import javafx.fxml.Initializable;
-import javafx.scene.canvas.Canvas;
-import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.control.Button;
 import javafx.scene.control.Label;
 import javafx.scene.control.TextField;
 import javafx.scene.layout.Pane;
-import javafx.scene.paint.Color;
 import javafx.stage.Stage;
 
 import java.io.IOException;
@@ -19,6 +22,8 @@ import java.time.Duration;
 import java.time.Instant;
 import java.util.List;
 import java.util.ResourceBundle;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class RootLayoutController implements Initializable {
 
@@ -70,15 +75,45 @@ public class RootLayoutController implements Initializable {
     @FXML
     private Label lTimeOptimal;
 
+    @FXML
+    private Label lProgressHopfield;
+
+    @FXML
+    private Button bComputeHopfield;
+
+    @FXML
+    private Button bCancelHopfield;
+
+    @FXML
+    private Button bConvergence;
+
+    @FXML
+    private Button bComputeNearest;
+
+    @FXML
+    private Button bComputeOptimal;
+
+    // live view of a running Hopfield solve is redrawn at most this often
+    private static final long FRAME_NANOS = 1_000_000_000L / 30;
+
+    // solves run here so the window stays responsive, daemon threads do not keep the application alive
+    private final ExecutorService worker = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "solver");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private Task<Object[]> hopfieldTask;
+    private AnimationTimer liveView;
+
     private final int paddingPane = 30;
     private final float radiusNode = 7;
     private List<double[]> coordinates;
     private List<int[]> coordsNorm;
     private Stage stage;
-    private Canvas canvasHopfield;
-    private Canvas canvasNearest;
-    private Canvas canvasOptimal;
-    private Hopfield hopfield;
+    private TourView viewHopfield;
+    private TourView viewNearest;
+    private TourView viewOptimal;
+    private HopfieldNetwork hopfield;
     private double A;
     private double B;
     private double C;
@@ -98,59 +133,22 @@ public class RootLayoutController implements Initializable {
     }
 
     public void initHopfield() {
-        canvasHopfield = new Canvas(pHopfield.getWidth(), pHopfield.getHeight());
-        pHopfield.getChildren().add(canvasHopfield);
+        viewHopfield = new TourView(pHopfield);
     }
 
     public void initNearest() {
-        canvasNearest = new Canvas(pNearest.getWidth(), pNearest.getHeight());
-        pNearest.getChildren().add(canvasNearest);
+        viewNearest = new TourView(pNearest);
     }
 
     public void initOptimal() {
-        canvasOptimal = new Canvas(pOptimal.getWidth(), pOptimal.getHeight());
-        pOptimal.getChildren().add(canvasOptimal);
-    }
-
-    private void drawNodesHopfield() {
-        clearCanvasHopfield(canvasHopfield);
-        initHopfield();
-
-        GraphicsContext gc = canvasHopfield.getGraphicsContext2D();
-        drawNodes(gc);
-    }
-
-    private void drawNodesNearest() {
-        clearCanvasHopfield(canvasNearest);
-        initNearest();
-
-        GraphicsContext gc = canvasNearest.getGraphicsContext2D();
-        drawNodes(gc);
-    }
-
-    private void drawNodesOptimal() {
-        clearCanvasHopfield(canvasOptimal);
-        initOptimal();
-
-        GraphicsContext gc = canvasOptimal.getGraphicsContext2D();
-        drawNodes(gc);
-    }
-
-    private void drawNodes(GraphicsContext gc) {
-        gc.setFill(Color.BLACK);
-        for (int[] coordinate : coordsNorm) {
-            gc.fillOval(coordinate[0], coordinate[1], radiusNode, radiusNode);
-        }
-    }
-
-    private void clearCanvasHopfield(Canvas canvas) {
-        GraphicsContext gc = canvas.getGraphicsContext2D();
-        gc.clearRect(0, 0, canvas.getWidth(), canvas.getWidth());
+        viewOptimal = new TourView(pOptimal);
     }
 
     @FXML
     public void onActionbGenerate() {
+        onActionbCancelHopfield();
         setParameters();
+        TSPUtils.invalidateDistanceMatrix();
         coordinates = TSPUtils.generateInstance(n);
 
         double xMin = coordinates.get(0)[0];
@@ -179,9 +177,9 @@ public class RootLayoutController implements Initializable {
             coordinate[0] += paddingPane;
             coordinate[1] = h - coordinate[1];
         }
-        drawNodesHopfield();
-        drawNodesNearest();
-        drawNodesOptimal();
+        viewHopfield.setNodes(coordsNorm, radiusNode);
+        viewNearest.setNodes(coordsNorm, radiusNode);
+        viewOptimal.setNodes(coordsNorm, radiusNode);
     }
 
     private void setParameters() {
@@ -195,94 +193,193 @@ public class RootLayoutController implements Initializable {
 
     @FXML
     public void onActionbComputeHopfield() {
-        drawNodesHopfield();
-        var graph = TSPUtils.getAdjacencyMatrix(coordinates);
+        if (hopfieldTask != null && hopfieldTask.isRunning()) return;
+        viewHopfield.clearTour();
+        var graph = TSPUtils.getDistanceMatrix(coordinates);
 
-        hopfield = new Hopfield(n, graph);
+        hopfield = HopfieldNetwork.create(n, graph, StatePrecision.DOUBLE);
         hopfield.setConstants(A, B, C, D, nPrime);
+        HopfieldNetwork network = hopfield;
+        List<double[]> instance = coordinates;
 
         Instant start = Instant.now();
-        var tuple = hopfield.force();
-        Instant finish = Instant.now();
-        long timeElapsed = Duration.between(start, finish).toMillis();
+        hopfieldTask = new Task<>() {
+            @Override
+            protected Object[] call() {
+                return network.force();
+            }
+
+            @Override
+            public boolean cancel(boolean mayInterruptIfRunning) {
+                network.cancel();
+                return super.cancel(mayInterruptIfRunning);
+            }
+        };
+        hopfieldTask.setOnSucceeded(event -> {
+            long timeElapsed = Duration.between(start, Instant.now()).toMillis();
+            // a new instance may have been generated meanwhile
+            if (instance == coordinates) showHopfieldResult(hopfieldTask.getValue(), graph, timeElapsed);
+            finishHopfield();
+        });
+        hopfieldTask.setOnCancelled(event -> {
+            lProgressHopfield.setText("Cancelled");
+            finishHopfield();
+        });
+        hopfieldTask.setOnFailed(event -> {
+            lProgressHopfield.setText("Failed: " + hopfieldTask.getException().getMessage());
+            finishHopfield();
+        });
+
+        bComputeHopfield.setDisable(true);
+        bConvergence.setDisable(true);
+        bCancelHopfield.setDisable(false);
+        startLiveView(network);
+        worker.submit(hopfieldTask);
+    }
 
+    @FXML
+    public void onActionbCancelHopfield() {
+        if (hopfieldTask != null) hopfieldTask.cancel();
+    }
+
+    /**
+     * Redraws the tour currently decoded by the network at a capped frame rate. Each frame only asks the solver for
+     * the next snapshot, so drawing never waits on the solver and the solver never waits on drawing.
+     */
+    private void startLiveView(HopfieldNetwork network) {
+        liveView = new AnimationTimer() {
+            private long lastFrame;
+            private HopfieldSnapshot drawn;
+
+            @Override
+            public void handle(long now) {
+                if (now - lastFrame < FRAME_NANOS) return;
+                lastFrame = now;
+                HopfieldSnapshot snapshot = network.getSnapshot();
+                if (snapshot != null && snapshot != drawn) {
+                    drawn = snapshot;
+                    viewHopfield.drawTour(snapshot.getTour());
+                    lProgressHopfield.setText(String.format("Attempt %d, iteration %d, energy %.4g",
+                            snapshot.getAttempt(), snapshot.getIteration(), snapshot.getEnergy()));
+                }
+                network.requestSnapshot();
+            }
+        };
+        liveView.start();
+    }
+
+    private void finishHopfield() {
+        if (liveView != null) liveView.stop();
+        bComputeHopfield.setDisable(false);
+        bConvergence.setDisable(false);
+        bCancelHopfield.setDisable(true);
+    }
+
+    private void showHopfieldResult(Object[] tuple, DistanceMatrix graph, long timeElapsed) {
         int[] tour = (int[]) tuple[0];
         boolean isValid = (boolean) tuple[1];
-        printTour(tour, canvasHopfield);
+        boolean repaired = (boolean) tuple[2];
+        viewHopfield.drawTour(tour);
         var fitness = TSPUtils.fitnessFunction(graph, tour);
         lLengthHopfield.setText(String.format("Length: %.3f", fitness));
-        lIsValid.setText("Valid: " + isValid);
+        lIsValid.setText("Valid: " + isValid + (repaired ? " (repaired)" : ""));
         lTimeHopfield.setText(String.format("Time: %d millis", timeElapsed));
+        lProgressHopfield.setText(String.format("Attempts: %d", hopfield.getAttempts()));
     }
 
     @FXML
     public void onActionbComputeNearest() {
-        drawNodesNearest();
-
-        var graph = TSPUtils.getAdjacencyMatrix(coordinates);
-
-        Instant start = Instant.now();
-        var tour = TSPUtils.nearestNeighbor(graph);
-        Instant finish = Instant.now();
-        long timeElapsed = Duration.between(start, finish).toMillis();
-
-        printTour(tour, canvasNearest);
-
-        var fitness = TSPUtils.fitnessFunction(graph, tour);
-        lLengthNearest.setText(String.format("Length: %.3f", fitness));
-        lTimeNearest.setText(String.format("Time: %d millis", timeElapsed));
+        viewNearest.clearTour();
+
+        List<double[]> instance = coordinates;
+        int cities = n;
+
+        // the multi-start takes seconds on large instances, so it runs off the UI thread like the other solvers
+        Task<Object[]> task = new Task<>() {
+            @Override
+            protected Object[] call() {
+                Instant start = Instant.now();
+                var tour = TSPUtils.nearestNeighbor(instance, cities, Runtime.getRuntime().availableProcessors());
+                long timeElapsed = Duration.between(start, Instant.now()).toMillis();
+                var fitness = TSPUtils.fitnessFunction(TSPUtils.getDistanceMatrix(instance), tour);
+                return new Object[]{tour, fitness, timeElapsed};
+            }
+        };
+        task.setOnSucceeded(event -> {
+            bComputeNearest.setDisable(false);
+            if (instance != coordinates) return;
+            Object[] result = task.getValue();
+            viewNearest.drawTour((int[]) result[0]);
+            lLengthNearest.setText(String.format("Length: %.3f", (double) result[1]));
+            lTimeNearest.setText(String.format("Time: %d millis", (long) result[2]));
+        });
+        task.setOnFailed(event -> {
+            lLengthNearest.setText(task.getException().getMessage());
+            lTimeNearest.setText("Time: ?");
+            bComputeNearest.setDisable(false);
+        });
+        bComputeNearest.setDisable(true);
+        lLengthNearest.setText("Computing...");
+        worker.submit(task);
     }
 
     @FXML
     public void onActionbComputeOptimal() {
-        drawNodesOptimal();
+        viewOptimal.clearTour();
 
-        var graph = TSPUtils.getAdjacencyMatrix(coordinates);
+        var graph = TSPUtils.getDistanceMatrix(coordinates);
+        List<double[]> instance = coordinates;
 
+        // Held-Karp takes seconds from about 20 cities on, so it also runs off the UI thread
         Instant start = Instant.now();
-        var tour = TSPUtils.solveExact(graph);
-        Instant finish = Instant.now();
-        long timeElapsed = Duration.between(start, finish).toMillis();
-
-        printTour(tour, canvasOptimal);
-
-        var fitness = TSPUtils.fitnessFunction(graph, tour);
-        lLengthOptimal.setText(String.format("Length: %.3f", fitness));
-        lTimeOptimal.setText(String.format("Time: %d millis", timeElapsed));
+        Task<int[]> task = new Task<>() {
+            @Override
+            protected int[] call() {
+                return TSPUtils.solveExact(graph);
+            }
+        };
+        task.setOnSucceeded(event -> {
+            long timeElapsed = Duration.between(start, Instant.now()).toMillis();
+            bComputeOptimal.setDisable(false);
+            if (instance != coordinates) return;
+            int[] tour = task.getValue();
+            viewOptimal.drawTour(tour);
+
+            var fitness = TSPUtils.fitnessFunction(graph, tour);
+            lLengthOptimal.setText(String.format("Length: %.3f", fitness));
+            lTimeOptimal.setText(String.format("Time: %d millis", timeElapsed));
+        });
+        task.setOnFailed(event -> {
+            lLengthOptimal.setText(task.getException().getMessage());
+            lTimeOptimal.setText("Time: ?");
+            bComputeOptimal.setDisable(false);
+        });
+        bComputeOptimal.setDisable(true);
+        lLengthOptimal.setText("Computing...");
+        worker.submit(task);
     }
 
     @FXML
     public void onActionbComputeRandom() {
-        drawNodesOptimal();
+        viewOptimal.clearTour();
 
-        var graph = TSPUtils.getAdjacencyMatrix(coordinates);
+        var graph = TSPUtils.getDistanceMatrix(coordinates);
 
         Instant start = Instant.now();
         var tour = TSPUtils.randomTour(n);
         Instant finish = Instant.now();
         long timeElapsed = Duration.between(start, finish).toMillis();
 
-        printTour(tour, canvasOptimal);
+        viewOptimal.drawTour(tour);
 
         var fitness = TSPUtils.fitnessFunction(graph, tour);
         lLengthOptimal.setText(String.format("Length: %.3f", fitness));
         lTimeOptimal.setText(String.format("Time: %d millis", timeElapsed));
     }
 
-    private void printTour(int[] tour, Canvas canvas) {
-        GraphicsContext gc = canvas.getGraphicsContext2D();
-        int i = 0;
-        for (; i < tour.length - 1; i++) {
-            gc.strokeLine(coordsNorm.get(tour[i])[0] + radiusNode / 2, coordsNorm.get(tour[i])[1] + radiusNode / 2,
-                    coordsNorm.get(tour[i + 1])[0] + radiusNode / 2, coordsNorm.get(tour[i + 1])[1] + radiusNode / 2);
-        }
-        gc.strokeLine(coordsNorm.get(tour[i])[0] + radiusNode / 2, coordsNorm.get(tour[i])[1] + radiusNode / 2,
-                coordsNorm.get(tour[0])[0] + radiusNode / 2, coordsNorm.get(tour[0])[1] + radiusNode / 2);
-    }
-
     @FXML
     public void onActionbConvergence() throws IOException {
-        double[] convergence = hopfield.getEnergy().stream().mapToDouble(i -> i).toArray();
+        double[] convergence = hopfield.getEnergy().toArray();
         SineGraph frame = new SineGraph(convergence);
         frame.setVisible(true);
     }
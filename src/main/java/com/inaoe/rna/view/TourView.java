@@ -0,0 +1,85 @@
+package com.inaoe.rna.view;
+
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.layout.Pane;
+import javafx.scene.paint.Color;
+
+import java.util.List;
+
+/**
+ * Retained drawing surface of a pane: a node layer drawn once per instance and a tour layer on top of it
+ * that is redrawn as a single path. Both canvases are created once and follow the size of the pane.
+ */
+class TourView {
+
+    /** Above this many cities nodes are drawn as small squares and the tour with thinner strokes. */
+    private static final int DETAIL_LIMIT = 500;
+
+    private final Canvas nodeLayer = new Canvas();
+    private final Canvas tourLayer = new Canvas();
+    private List<int[]> nodes = List.of();
+    private double center;
+
+    TourView(Pane pane) {
+        for (Canvas canvas : new Canvas[]{nodeLayer, tourLayer}) {
+            canvas.widthProperty().bind(pane.widthProperty());
+            canvas.heightProperty().bind(pane.heightProperty());
+        }
+        pane.getChildren().addAll(nodeLayer, tourLayer);
+    }
+
+    /**
+     * Replaces the cities and redraws the node layer; the tour layer is cleared.
+     *
+     * @param nodes    top left corners of the nodes, in pane coordinates
+     * @param diameter diameter of a node
+     */
+    void setNodes(List<int[]> nodes, double diameter) {
+        this.nodes = nodes;
+        this.center = diameter / 2;
+
+        GraphicsContext gc = nodeLayer.getGraphicsContext2D();
+        gc.clearRect(0, 0, nodeLayer.getWidth(), nodeLayer.getHeight());
+        gc.setFill(Color.BLACK);
+        if (nodes.size() <= DETAIL_LIMIT) {
+            for (int[] node : nodes) {
+                gc.fillOval(node[0], node[1], diameter, diameter);
+            }
+        } else {
+            for (int[] node : nodes) {
+                gc.fillRect(node[0] + center - 1, node[1] + center - 1, 2, 2);
+            }
+        }
+        clearTour();
+    }
+
+    void clearTour() {
+        tourLayer.getGraphicsContext2D().clearRect(0, 0, tourLayer.getWidth(), tourLayer.getHeight());
+    }
+
+    /**
+     * Replaces the drawn tour. The closed tour is stroked once as one path; consecutive cities falling on the
+     * same pixel are skipped.
+     */
+    void drawTour(int[] tour) {
+        clearTour();
+        if (tour.length < 2) return;
+
+        GraphicsContext gc = tourLayer.getGraphicsContext2D();
+        gc.setStroke(Color.BLACK);
+        gc.setLineWidth(nodes.size() <= DETAIL_LIMIT ? 1 : 0.5);
+        gc.beginPath();
+        int[] first = nodes.get(tour[0]);
+        int[] last = first;
+        gc.moveTo(first[0] + center, first[1] + center);
+        for (int i = 1; i < tour.length; i++) {
+            int[] node = nodes.get(tour[i]);
+            if (node[0] == last[0] && node[1] == last[1]) continue;
+            gc.lineTo(node[0] + center, node[1] + center);
+            last = node;
+        }
+        gc.closePath();
+        gc.stroke();
+    }
+}
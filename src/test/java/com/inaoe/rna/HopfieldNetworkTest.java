@@ -0,0 +1,32 @@
+package com.inaoe.rna;
+
+import com.inaoe.rna.utils.DistanceMatrix;
+import com.inaoe.rna.utils.TSPUtils;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HopfieldNetworkTest {
+
+    @Test
+    void repairTourReturnsAValidTour() {
+        for (StatePrecision precision : StatePrecision.values()) {
+            for (int seed = 0; seed < 10; seed++) {
+                int n = 8 + 3 * seed;
+                DistanceMatrix D = TSPUtils.getAdjacencyMatrix(TSPUtils.generateInstance(n, seed));
+                HopfieldNetwork hopfield = HopfieldNetwork.create(n, D, precision);
+                hopfield.setSeed(seed);
+                hopfield.start();
+                assertTrue(hopfield.isValid(hopfield.repairTour()), precision + " n=" + n + " seed=" + seed);
+            }
+        }
+    }
+
+    @Test
+    void repairTourOfAFreshStateIsValid() {
+        DistanceMatrix D = TSPUtils.getAdjacencyMatrix(TSPUtils.generateInstance(20, 1));
+        HopfieldNetwork hopfield = HopfieldNetwork.create(20, D, StatePrecision.DOUBLE);
+        hopfield.setSeed(1);
+        assertTrue(hopfield.isValid(hopfield.repairTour()));
+    }
+}
@@ -0,0 +1,40 @@
+package com.inaoe.rna.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BranchAndBoundSolverTest {
+
+    @Test
+    void agreesWithHeldKarpOnSmallRandomInstances() throws InterruptedException {
+        for (int seed = 0; seed < 30; seed++) {
+            int n = 4 + seed % 9;
+            DistanceMatrix D = TSPUtils.getAdjacencyMatrix(TSPUtils.generateInstance(n, seed));
+
+            int[] heldKarp = new HeldKarpSolver(D).solve();
+            BranchAndBoundSolver bnb = new BranchAndBoundSolver(D);
+            bnb.setThreads(1 + seed % 3);
+            int[] branchAndBound = bnb.solve();
+
+            assertPermutation(heldKarp, n);
+            assertPermutation(branchAndBound, n);
+            assertTrue(bnb.isOptimal(), "n=" + n + " seed=" + seed + " was not proven optimal");
+            // Held-Karp sums its costs in float
+            double expected = TSPUtils.fitnessFunction(D, heldKarp);
+            assertEquals(expected, TSPUtils.fitnessFunction(D, branchAndBound), 1e-5 * expected,
+                    "n=" + n + " seed=" + seed);
+        }
+    }
+
+    private static void assertPermutation(int[] tour, int n) {
+        int[] sorted = tour.clone();
+        Arrays.sort(sorted);
+        for (int i = 0; i < n; i++) {
+            assertEquals(i, sorted[i]);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.inaoe.rna.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LocalSearchTest {
+
+    @Test
+    void keepsAPermutationAndNeverLengthensTheTour() {
+        for (int seed = 0; seed < 20; seed++) {
+            int n = 3 + 11 * seed;
+            DistanceMatrix D = TSPUtils.getAdjacencyMatrix(TSPUtils.generateInstance(n, seed));
+            int[] initial = TSPUtils.randomTour(n, seed);
+            int[] copy = initial.clone();
+
+            LocalSearch search = new LocalSearch(D, Math.min(8, n - 1));
+            int[] improved = search.improve(initial);
+
+            assertArrayEquals(copy, initial, "improve changed its input");
+            int[] sorted = improved.clone();
+            Arrays.sort(sorted);
+            for (int i = 0; i < n; i++) {
+                assertEquals(i, sorted[i], "n=" + n + " is not a permutation");
+            }
+            double before = TSPUtils.fitnessFunction(D, initial);
+            double after = TSPUtils.fitnessFunction(D, improved);
+            assertTrue(after <= before + 1e-9, "n=" + n + " went from " + before + " to " + after);
+            assertEquals(after, search.getFinalLength(), 1e-9);
+        }
+    }
+
+    @Test
+    void leavesALocallyOptimalTourAlone() {
+        DistanceMatrix D = TSPUtils.getAdjacencyMatrix(TSPUtils.generateInstance(100, 7));
+        LocalSearch search = new LocalSearch(D, 8);
+        int[] once = search.improve(TSPUtils.nearestNeighbor(D, 0));
+        int[] twice = search.improve(once);
+        assertEquals(TSPUtils.fitnessFunction(D, once), TSPUtils.fitnessFunction(D, twice), 1e-9);
+    }
+}
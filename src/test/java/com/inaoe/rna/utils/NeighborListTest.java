@@ -0,0 +1,38 @@
+package com.inaoe.rna.utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class NeighborListTest {
+
+    @Test
+    void listsAreSymmetricAndSortedByDistance() {
+        for (int k : new int[]{1, 3, 8}) {
+            DistanceMatrix D = TSPUtils.getAdjacencyMatrix(TSPUtils.generateInstance(60, k));
+            NeighborList list = NeighborList.build(D, k);
+            int n = list.getN();
+            int[] offsets = list.getOffsets();
+            int[] neighbors = list.getNeighbors();
+            double[] weights = list.getWeights();
+
+            boolean[][] adjacent = new boolean[n][n];
+            for (int x = 0; x < n; x++) {
+                assertTrue(list.degree(x) >= k, "city " + x + " lost some of its " + k + " nearest");
+                for (int e = offsets[x]; e < offsets[x + 1]; e++) {
+                    int y = neighbors[e];
+                    assertTrue(y != x, "city " + x + " lists itself");
+                    assertEquals(D.get(x, y), weights[e]);
+                    if (e > offsets[x]) assertTrue(weights[e - 1] <= weights[e], "row " + x + " is not sorted");
+                    adjacent[x][y] = true;
+                }
+            }
+            for (int x = 0; x < n; x++) {
+                for (int y = 0; y < n; y++) {
+                    assertEquals(adjacent[x][y], adjacent[y][x], x + " and " + y + " disagree");
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.inaoe.rna.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class PackedDistanceMatrixTest {
+
+    @Test
+    void matchesDirectEuclideanDistances() {
+        for (int n : new int[]{1, 2, 3, 17, 150}) {
+            List<double[]> nodes = TSPUtils.generateInstance(n, n);
+            PackedDistanceMatrix matrix = PackedDistanceMatrix.euclidean(nodes);
+            assertEquals(n, matrix.size());
+            for (int x = 0; x < n; x++) {
+                for (int y = 0; y < n; y++) {
+                    double expected = Math.hypot(nodes.get(x)[0] - nodes.get(y)[0], nodes.get(x)[1] - nodes.get(y)[1]);
+                    assertEquals(expected, matrix.get(x, y), 1e-12, "(" + x + ", " + y + ") of " + n);
+                }
+            }
+        }
+    }
+
+    @Test
+    void packsAnotherMatrixUnchanged() {
+        List<double[]> nodes = TSPUtils.generateInstance(40, 3);
+        DistanceMatrix lazy = new CoordinateDistanceMatrix(nodes);
+        PackedDistanceMatrix packed = PackedDistanceMatrix.of(lazy);
+        for (int x = 0; x < 40; x++) {
+            for (int y = 0; y < 40; y++) {
+                assertEquals(lazy.get(x, y), packed.get(x, y));
+            }
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.inaoe.rna.utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TSPLibReaderTest {
+
+    @Test
+    void readsGeoInstanceWithItsKnownOptimum() throws IOException {
+        TSPLibInstance instance = new TSPLibReader().read(Paths.get("data", "ulysses16.tsp"));
+        assertEquals(EdgeWeightType.GEO, instance.getEdgeWeightType());
+        assertEquals(16, instance.getDimension());
+        DistanceMatrix D = instance.getDistances();
+
+        // optimal tour published with TSPLIB, 1-based
+        int[] optimal = {1, 14, 13, 12, 7, 6, 15, 5, 11, 9, 10, 16, 3, 2, 4, 8};
+        for (int i = 0; i < optimal.length; i++) {
+            optimal[i]--;
+        }
+        assertEquals(6859, TSPUtils.fitnessFunction(D, optimal));
+        assertEquals(6859, TSPUtils.fitnessFunction(D, new HeldKarpSolver(D).solve()));
+        assertEquals(D.get(3, 7), instance.getLazyDistances().get(3, 7));
+    }
+
+    @Test
+    void roundsAttDistancesUp(@TempDir Path directory) throws IOException {
+        Path file = directory.resolve("square.tsp");
+        Files.writeString(file, String.join("\n",
+                "NAME: square",
+                "TYPE: TSP",
+                "DIMENSION: 3",
+                "EDGE_WEIGHT_TYPE: ATT",
+                "NODE_COORD_SECTION",
+                "1 0 0",
+                "2 10 0",
+                "3 30 40",
+                "EOF", ""));
+        DistanceMatrix D = new TSPLibReader().read(file).getDistances();
+        // sqrt(100 / 10) = 3.16 rounds to 3, which is below it, so 4
+        assertEquals(4, D.get(0, 1));
+        // sqrt(2500 / 10) = 15.81 rounds to 16
+        assertEquals(16, D.get(0, 2));
+        assertEquals(D.get(2, 1), D.get(1, 2));
+        assertEquals(0, D.get(1, 1));
+    }
+
+    @Test
+    void doesNotCacheUnlessAskedTo(@TempDir Path directory) throws IOException {
+        Path file = Files.copy(Paths.get("data", "ulysses16.tsp"), directory.resolve("ulysses16.tsp"));
+        // a default cache would land in java.io.tmpdir, so that points here while the reader is created and used
+        String tmpdir = System.getProperty("java.io.tmpdir");
+        System.setProperty("java.io.tmpdir", directory.toString());
+        try {
+            new TSPLibReader().read(file);
+        } finally {
+            System.setProperty("java.io.tmpdir", tmpdir);
+        }
+        try (var files = Files.list(directory)) {
+            assertEquals(1, files.count());
+        }
+        TSPLibReader reader = new TSPLibReader();
+        reader.setCacheDirectory(directory.resolve("cache"));
+        reader.read(file);
+        assertTrue(Files.isDirectory(directory.resolve("cache")));
+    }
+}